@@ -15,6 +15,8 @@ public interface ProductCompositeService {
      * Sample usage: curl $HOST:$PORT/product-composite/1
      *
      * @param productId - The product id
+     * @param delay - passed on to the product service, only honoured there with the fault_injection profile
+     * @param faultPercent - passed on to the product service, only honoured there with the fault_injection profile
      * @return the composite product info, if found, else null
      */
     @ApiOperation(
@@ -2,8 +2,11 @@ package com.habeebcycle.microservice.library.api.core.product;
 
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductService {
 
     /**
@@ -12,6 +15,9 @@ public interface ProductService {
      *  Sample usage: curl $HOST:$PORT/product/123
      *
      * @param productId - The id of the product
+     * @param delay - seconds to wait before answering, for resilience tests. Only honoured by a product service
+     *              with app.fault-injection.enabled, e.g. the fault_injection profile, ignored and logged otherwise
+     * @param faultPercent - the chance in percent of failing with a 500, honoured like the delay
      * @return the product, if found, else null
      */
     @GetMapping(value = "/product/{productId}", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -21,6 +27,17 @@ public interface ProductService {
             @RequestParam(value = "faultPercent", required = false, defaultValue = "0") int faultPercent
         );
 
+    /**
+     * Looks up several products with one call, e.g. for a listing page.
+     *
+     *  Sample usage: curl "$HOST:$PORT/product?ids=1,2,3"
+     *
+     * @param productIds - The ids of the products, the service caps how many can be asked for at once
+     * @return the products found, in no particular order. Ids without a product are left out
+     */
+    @GetMapping(value = "/product", produces = MediaType.APPLICATION_JSON_VALUE)
+    Flux<Product> getProducts(@RequestParam(value = "ids", required = true) List<Integer> productIds);
+
     /**
      * This will be called by event-driven mechanism. Once their is a message
      * on the queue topic to create a product, it will be triggered by that event
@@ -17,6 +17,33 @@ public interface ReviewService {
     @GetMapping(value = "/review", produces = MediaType.APPLICATION_JSON_VALUE)
     Flux<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
 
+    /**
+     * Keyset pagination over the reviews of a product, ordered by reviewId. The next page starts
+     * after the reviewId of the last review received.
+     *
+     * Sample usage: curl "$HOST:$PORT/review/page?productId=1&after=50&limit=50"
+     *
+     * @param productId - The id of the product
+     * @param after - Only reviews with a greater reviewId are returned, 0 for the first page
+     * @param limit - The max number of reviews returned, capped by the service
+     * @return The page of reviews for the product or empty list
+     */
+    @GetMapping(value = "/review/page", produces = MediaType.APPLICATION_JSON_VALUE)
+    Flux<Review> getReviewsPage(@RequestParam(value = "productId", required = true) int productId,
+                                @RequestParam(value = "after", required = false, defaultValue = "0") int after,
+                                @RequestParam(value = "limit", required = false, defaultValue = "50") int limit);
+
+    /**
+     * Streams all reviews of a product, ordered by reviewId, as newline delimited JSON.
+     *
+     * Sample usage: curl $HOST:$PORT/review/stream?productId=1
+     *
+     * @param productId - The id of the product
+     * @return The reviews for the product, one JSON document per line
+     */
+    @GetMapping(value = "/review/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    Flux<Review> streamReviews(@RequestParam(value = "productId", required = true) int productId);
+
     /**
      * This will be called by event-driven mechanism. Once their is a message
      * on the queue topic to create a review, it will be triggered by that event
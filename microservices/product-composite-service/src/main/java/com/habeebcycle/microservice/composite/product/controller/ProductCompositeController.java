@@ -98,7 +98,7 @@ public class ProductCompositeController implements ProductCompositeService {
                         (List<Review>) values[3],
                         serviceUtil.getServiceAddress()),
                 ReactiveSecurityContextHolder.getContext().defaultIfEmpty(securityContext),
-                integration.getProduct(productId, delay, faultPercent)
+                getProduct(productId, delay, faultPercent)
                     .onErrorReturn(CallNotPermittedException.class, getProductFallbackValue(productId)),
                 integration.getRecommendations(productId).collectList(),
                 integration.getReviews(productId).collectList())
@@ -132,6 +132,14 @@ public class ProductCompositeController implements ProductCompositeService {
         }
     }
 
+    // Only a single product lookup carries the delay and faultPercent to the product service, others share a batch
+    private Mono<Product> getProduct(int productId, int delay, int faultPercent) {
+        if (delay == 0 && faultPercent == 0) {
+            return integration.getProductInBatch(productId);
+        }
+        return integration.getProduct(productId, delay, faultPercent);
+    }
+
     private Product getProductFallbackValue(int productId) {
         LOG.warn("Creating a fallback product for productId = {}", productId);
 
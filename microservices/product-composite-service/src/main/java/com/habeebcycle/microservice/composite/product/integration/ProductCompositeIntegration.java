@@ -13,6 +13,7 @@ import com.habeebcycle.microservice.library.util.exceptions.BadRequestException;
 import com.habeebcycle.microservice.library.util.exceptions.InvalidInputException;
 import com.habeebcycle.microservice.library.util.exceptions.NotFoundException;
 import com.habeebcycle.microservice.library.util.http.HttpErrorInfo;
+import com.habeebcycle.microservice.library.util.reactive.EmitFailureHandlers;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import org.slf4j.Logger;
@@ -20,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.http.MediaType;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
@@ -27,12 +29,17 @@ import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.URI;
 import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Component
 @EnableBinding(MessageSources.class)
@@ -54,6 +61,9 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
 
     private final int productServiceTimeout;
 
+    private final Sinks.Many<PendingProduct> pendingProducts = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable productBatcher;
+
     private WebClient webClient;
 
     @Autowired
@@ -61,7 +71,11 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
                                        @Value("${app.product-service.url}") String productServiceUrl,
                                        @Value("${app.recommendation-service.url}") String recommendationServiceUrl,
                                        @Value("${app.review-service.url}") String reviewServiceUrl,
-                                       @Value("${app.product-service.timeout}") int productServiceTimeout) {
+                                       @Value("${app.product-service.timeout}") int productServiceTimeout,
+                                       @Value("${app.product-service.batch.size:50}") int productBatchSize,
+                                       @Value("${app.product-service.batch.window:5ms}") Duration productBatchWindow,
+                                       @Value("${app.product-service.batch.concurrency:4}") int productBatchConcurrency,
+                                       @Value("${app.product.batch.max-size}") int productBatchMaxSize) {
 
         this.webClientBuilder = webClientBuilder;
         this.mapper = mapper;
@@ -70,6 +84,21 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         this.recommendationServiceUrl = recommendationServiceUrl;
         this.reviewServiceUrl = reviewServiceUrl;
         this.productServiceTimeout = productServiceTimeout;
+        // The product service answers at most app.product.batch.max-size products per getProducts call
+        if (productBatchSize > productBatchMaxSize) {
+            LOG.warn("app.product-service.batch.size {} exceeds the app.product.batch.max-size of the product service, uses {}",
+                    productBatchSize, productBatchMaxSize);
+            productBatchSize = productBatchMaxSize;
+        }
+        this.productBatcher = pendingProducts.asFlux()
+                .bufferTimeout(productBatchSize, productBatchWindow)
+                .flatMap(this::getProductBatch, productBatchConcurrency)
+                .subscribe();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        productBatcher.dispose();
     }
 
     private WebClient getWebClient() {
@@ -100,6 +129,65 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
                 .timeout(Duration.ofSeconds(productServiceTimeout));
     }
 
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+
+        String url = productServiceUrl + "/product?ids=" +
+                productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+
+        LOG.debug("Will call getProducts API on URL: {}", url);
+
+        return getWebClient().get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Product.class)
+                .log()
+                .onErrorMap(WebClientException.class, this::handleHttpClientException)
+                .timeout(Duration.ofSeconds(productServiceTimeout));
+    }
+
+    /**
+     * Looks up a product together with the other products asked for within app.product-service.batch.window,
+     * so that concurrent lookups share one getProducts call of up to app.product-service.batch.size products.
+     * At most app.product-service.batch.concurrency getProducts calls are in flight. A retry looks the product
+     * up again in a later batch.
+     *
+     * @param productId - the id of the product
+     * @return the product, or a NotFoundException if there is none
+     */
+    @Retry(name = CIRCUIT_BREAKER_NAME)
+    @CircuitBreaker(name = CIRCUIT_BREAKER_NAME)
+    public Mono<Product> getProductInBatch(int productId) {
+
+        if (productId < 1) return Mono.error(new InvalidInputException("Invalid productId: " + productId));
+
+        return Mono.defer(() -> {
+            PendingProduct product = new PendingProduct(productId);
+            pendingProducts.emitNext(product, EmitFailureHandlers.RETRY_NON_SERIALIZED);
+            return product.result.asMono();
+        }).timeout(Duration.ofSeconds(productServiceTimeout));
+    }
+
+    private Mono<Void> getProductBatch(List<PendingProduct> batch) {
+        List<Integer> productIds = batch.stream().map(product -> product.productId).distinct().collect(Collectors.toList());
+
+        return getProducts(productIds)
+                .collectMap(Product::getProductId)
+                .doOnNext(products -> batch.forEach(pending -> {
+                    Product product = products.get(pending.productId);
+                    if (product != null) {
+                        pending.result.tryEmitValue(product);
+                    } else {
+                        pending.result.tryEmitError(new NotFoundException("No product found for productId: " + pending.productId));
+                    }
+                }))
+                .onErrorResume(e -> {
+                    batch.forEach(pending -> pending.result.tryEmitError(e));
+                    return Mono.empty();
+                })
+                .then();
+    }
+
     @Override
     public Product createProduct(Product body) {
 
@@ -200,6 +288,34 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
 
     }
 
+    @Override
+    public Flux<Review> getReviewsPage(int productId, int after, int limit) {
+
+        String url = reviewServiceUrl + "/review/page?productId=" + productId + "&after=" + after + "&limit=" + limit;
+        LOG.debug("Will call getReviewsPage API on URL: {}", url);
+
+        return getWebClient().get()
+                .uri(url)
+                .retrieve()
+                .bodyToFlux(Review.class)
+                .log()
+                .onErrorMap(WebClientException.class, this::handleHttpClientException);
+    }
+
+    @Override
+    public Flux<Review> streamReviews(int productId) {
+
+        String url = reviewServiceUrl + "/review/stream?productId=" + productId;
+        LOG.debug("Will call streamReviews API on URL: {}", url);
+
+        return getWebClient().get()
+                .uri(url)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .bodyToFlux(Review.class)
+                .onErrorMap(WebClientException.class, this::handleHttpClientException);
+    }
+
     @Override
     public void deleteReviews(int productId) {
         LOG.debug("Will send a delete reviews message event");
@@ -247,4 +363,14 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         }
     }
 
+    private static class PendingProduct {
+
+        private final int productId;
+        private final Sinks.One<Product> result = Sinks.one();
+
+        private PendingProduct(int productId) {
+            this.productId = productId;
+        }
+    }
+
 }
@@ -46,6 +46,8 @@ class ProductCompositeServiceApplicationTests {
 	@BeforeEach
 	public void setUp() {
 
+		Mockito.when(compositeIntegration.getProductInBatch(PRODUCT_ID_OK))
+				.thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "mock-name", 1, "mock-address")));
 		Mockito.when(compositeIntegration.getProduct(eq(PRODUCT_ID_OK), anyInt(), anyInt()))
 				.thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "mock-name", 1, "mock-address")));
 		Mockito.when(compositeIntegration.getRecommendations(PRODUCT_ID_OK))
@@ -55,10 +57,10 @@ class ProductCompositeServiceApplicationTests {
 				.thenReturn(Flux.fromIterable(Collections.singletonList(new Review(PRODUCT_ID_OK, 1, "mock-author",
 						"mock-subject", "mock-content", "mock-address"))));
 
-		Mockito.when(compositeIntegration.getProduct(eq(PRODUCT_ID_NOT_FOUND), anyInt(), anyInt()))
+		Mockito.when(compositeIntegration.getProductInBatch(PRODUCT_ID_NOT_FOUND))
 				.thenThrow(new NotFoundException("400 NOT_FOUND: " + PRODUCT_ID_NOT_FOUND));
 
-		Mockito.when(compositeIntegration.getProduct(eq(PRODUCT_ID_INVALID), anyInt(), anyInt()))
+		Mockito.when(compositeIntegration.getProductInBatch(PRODUCT_ID_INVALID))
 				.thenThrow(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID));
 	}
 
@@ -101,6 +103,22 @@ class ProductCompositeServiceApplicationTests {
 				.jsonPath("$.reviews.length()").isEqualTo(1);
 	}
 
+	@Test
+	void getProductWithFaultInjectionTest() {
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK + "?delay=1&faultPercent=10")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.OK)
+				.expectBody()
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK);
+
+		// Only the single lookup passes the delay and faultPercent on to the product service
+		Mockito.verify(compositeIntegration).getProduct(PRODUCT_ID_OK, 1, 10);
+		Mockito.verify(compositeIntegration, Mockito.never()).getProductInBatch(anyInt());
+	}
+
 	@Test
 	void getProductNotFoundTest() {
 
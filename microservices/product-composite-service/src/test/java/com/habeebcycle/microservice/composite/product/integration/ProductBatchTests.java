@@ -0,0 +1,130 @@
+package com.habeebcycle.microservice.composite.product.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.habeebcycle.microservice.library.util.exceptions.NotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductBatchTests {
+
+    private final List<URI> requests = new CopyOnWriteArrayList<>();
+
+    private ProductCompositeIntegration integration;
+
+    @BeforeEach
+    void setUp() {
+        integration = new ProductCompositeIntegration(webClientBuilder(), new ObjectMapper(), null,
+                "http://product", "http://recommendation", "http://review", 2, 50, Duration.ofMillis(100), 4, 100);
+    }
+
+    // Answers every batch with the products 1 and 2
+    private WebClient.Builder webClientBuilder() {
+        return WebClient.builder().exchangeFunction(request -> {
+            requests.add(request.url());
+            return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body("[{\"productId\":1,\"name\":\"n1\",\"weight\":1},{\"productId\":2,\"name\":\"n2\",\"weight\":2}]")
+                    .build());
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        integration.shutdown();
+    }
+
+    @Test
+    void coalesceConcurrentLookupsTest() {
+        StepVerifier.create(Mono.zip(
+                        integration.getProductInBatch(1),
+                        integration.getProductInBatch(2),
+                        integration.getProductInBatch(1)))
+                .expectNextMatches(products -> products.getT1().getName().equals("n1")
+                        && products.getT2().getName().equals("n2")
+                        && products.getT3().getProductId() == 1)
+                .verifyComplete();
+
+        assertEquals(1, requests.size());
+        assertEquals("http://product/product?ids=1,2", requests.get(0).toString());
+    }
+
+    @Test
+    void productNotFoundTest() {
+        StepVerifier.create(Mono.zip(integration.getProductInBatch(1), integration.getProductInBatch(13)))
+                .expectErrorMatches(e -> e instanceof NotFoundException
+                        && e.getMessage().equals("No product found for productId: 13"))
+                .verify();
+
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void batchSizeCappedAtProductServiceMaxTest() {
+        ProductCompositeIntegration oversized = new ProductCompositeIntegration(webClientBuilder(), new ObjectMapper(), null,
+                "http://product", "http://recommendation", "http://review", 2, 500, Duration.ofMillis(100), 4, 100);
+
+        try {
+            // Only the products 1 and 2 are found, the other lookups are answered with a NotFoundException
+            StepVerifier.create(Flux.range(1, 150).flatMap(productId -> oversized.getProductInBatch(productId)
+                            .onErrorResume(NotFoundException.class, e -> Mono.empty())))
+                    .expectNextCount(2)
+                    .verifyComplete();
+
+            assertEquals(2, requests.size());
+            assertEquals(100, requests.get(0).getQuery().split(",").length);
+            assertEquals(50, requests.get(1).getQuery().split(",").length);
+        } finally {
+            oversized.shutdown();
+        }
+    }
+
+    @Test
+    void boundedConcurrentBatchesTest() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        // Batches of a single product, each answered after a delay
+        WebClient.Builder webClientBuilder = WebClient.builder().exchangeFunction(request -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            String productId = request.url().getQuery().substring("ids=".length());
+            return Mono.delay(Duration.ofMillis(50))
+                    .map(tick -> ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body("[{\"productId\":" + productId + ",\"name\":\"n\",\"weight\":1}]")
+                            .build())
+                    .doOnNext(response -> inFlight.decrementAndGet());
+        });
+        ProductCompositeIntegration bounded = new ProductCompositeIntegration(webClientBuilder, new ObjectMapper(), null,
+                "http://product", "http://recommendation", "http://review", 2, 1, Duration.ofMillis(100), 3, 100);
+
+        try {
+            List<Integer> productIds = IntStream.rangeClosed(1, 12).boxed().collect(Collectors.toList());
+            StepVerifier.create(Flux.fromIterable(productIds).flatMap(bounded::getProductInBatch))
+                    .expectNextCount(12)
+                    .verifyComplete();
+
+            assertEquals(3, maxInFlight.get());
+        } finally {
+            bounded.shutdown();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.habeebcycle.microservice.core.product.controller;
+
+import com.habeebcycle.microservice.core.product.persistence.ProductEntity;
+import com.habeebcycle.microservice.library.util.reactive.EmitFailureHandlers;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.WriteConcernError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Buffers products inserted by concurrent callers into bulk writes of up to app.product.bulk-write.size products,
+ * waiting at most app.product.bulk-write.max-wait for a bulk write to fill. Up to app.product.bulk-write.concurrency
+ * bulk writes are in flight, later ones wait for one of them to finish. The bulk write is unordered, so a
+ * duplicate productId only fails its own insert, and each write error is handed back to the caller that asked
+ * for that insert. A write concern error fails every insert of the bulk write, since none of them is known to be
+ * durable. An entity keeps the id of its first insert, so when its retry fails as a duplicate of the document
+ * that insert stored after all, the retry succeeds.
+ */
+@Component
+public class ProductBatchWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductBatchWriter.class);
+
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+    private final ReactiveMongoTemplate template;
+    private final Sinks.Many<PendingProduct> pending = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable writer;
+
+    @Autowired
+    public ProductBatchWriter(ReactiveMongoTemplate template,
+                              @Value("${app.product.bulk-write.size:500}") int batchSize,
+                              @Value("${app.product.bulk-write.max-wait:10ms}") Duration maxWait,
+                              @Value("${app.product.bulk-write.concurrency:4}") int concurrency) {
+        this.template = template;
+        this.writer = pending.asFlux()
+                .bufferTimeout(batchSize, maxWait)
+                .flatMap(this::write, concurrency)
+                .subscribe();
+    }
+
+    /**
+     * @param entity - the new product to store, each subscription inserts it again with the same id
+     * @return the stored product, or a DuplicateKeyException if another product with the productId exists
+     */
+    public Mono<ProductEntity> insert(ProductEntity entity) {
+        return Mono.defer(() -> {
+            PendingProduct product = new PendingProduct(entity);
+            pending.emitNext(product, EmitFailureHandlers.RETRY_NON_SERIALIZED);
+            return product.result.asMono();
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        writer.dispose();
+    }
+
+    private Mono<Void> write(List<PendingProduct> batch) {
+        List<InsertOneModel<Document>> inserts = batch.stream()
+                .map(product -> new InsertOneModel<>(toDocument(product.entity)))
+                .collect(Collectors.toList());
+
+        return template.getCollection(template.getCollectionName(ProductEntity.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(inserts, UNORDERED)))
+                .doOnNext(result -> {
+                    LOG.debug("write: inserted a bulk of {} products", batch.size());
+                    batch.forEach(product -> product.result.tryEmitValue(product.entity));
+                })
+                .onErrorResume(MongoBulkWriteException.class, e -> {
+                    LOG.debug("write: {} of a bulk of {} products failed, write concern error: {}",
+                            e.getWriteErrors().size(), batch.size(), e.getWriteConcernError());
+                    return complete(batch, e.getWriteErrors(), e.getWriteConcernError());
+                })
+                .onErrorResume(e -> {
+                    batch.forEach(product -> product.result.tryEmitError(e));
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    // The write errors refer to the inserts by their index in the bulk write
+    private Mono<Void> complete(List<PendingProduct> batch, List<BulkWriteError> writeErrors,
+                                WriteConcernError writeConcernError) {
+        Map<Integer, BulkWriteError> errors = writeErrors.stream()
+                .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()));
+        Map<PendingProduct, BulkWriteError> duplicates = new LinkedHashMap<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingProduct product = batch.get(i);
+            BulkWriteError error = errors.get(i);
+            if (error == null && writeConcernError == null) {
+                product.result.tryEmitValue(product.entity);
+            } else if (error == null) {
+                product.result.tryEmitError(new DataIntegrityViolationException(writeConcernError.getMessage()));
+            } else if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+                duplicates.put(product, error);
+            } else {
+                product.result.tryEmitError(new DataIntegrityViolationException(error.getMessage()));
+            }
+        }
+        return completeDuplicates(duplicates);
+    }
+
+    // A new id is never stored yet, so a stored document with the id was written by an earlier attempt of the insert
+    private Mono<Void> completeDuplicates(Map<PendingProduct, BulkWriteError> duplicates) {
+        if (duplicates.isEmpty()) return Mono.empty();
+
+        List<String> ids = duplicates.keySet().stream()
+                .map(product -> product.entity.getId())
+                .collect(Collectors.toList());
+        return template.find(Query.query(Criteria.where("id").in(ids)), ProductEntity.class)
+                .map(ProductEntity::getId)
+                .collect(Collectors.toSet())
+                .doOnNext(stored -> duplicates.forEach((product, error) -> {
+                    if (stored.contains(product.entity.getId())) {
+                        LOG.debug("write: product {} was stored by an earlier attempt", product.entity.getProductId());
+                        product.result.tryEmitValue(product.entity);
+                    } else {
+                        product.result.tryEmitError(new DuplicateKeyException(error.getMessage()));
+                    }
+                }))
+                .then();
+    }
+
+    // Sets what a save of a new entity would, the id and the initial version. The id is kept for a retry
+    private Document toDocument(ProductEntity entity) {
+        if (entity.getId() == null) entity.setId(new ObjectId().toHexString());
+        entity.setVersion(0);
+
+        Document document = new Document();
+        template.getConverter().write(entity, document);
+        return document;
+    }
+
+    private static class PendingProduct {
+
+        private final ProductEntity entity;
+        private final Sinks.One<ProductEntity> result = Sinks.one();
+
+        private PendingProduct(ProductEntity entity) {
+            this.entity = entity;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.habeebcycle.microservice.core.product.controller;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.habeebcycle.microservice.core.product.persistence.ProductEntity;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/*
+    Per-instance cache of products. A MongoDB change stream on the products collection drops the entries of
+    updated and deleted products on every instance, so while the stream is up the entries do not expire.
+    The stream only counts as up once it has delivered its first event, until then entries expire after
+    app.cache.products.ttl-seconds. Change streams need a replica set or a sharded cluster. On a standalone server,
+    or when the stream fails, the entries expire again and the stream is retried after
+    app.cache.products.change-stream-retry. The cache is only cleared when a stream that was up fails.
+ */
+@Component
+public class ProductCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductCache.class);
+
+    // Replaying a few seconds of changes only drops a few more entries, missing one would keep a stale product
+    private static final Duration CLOCK_SKEW_MARGIN = Duration.ofSeconds(10);
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final AsyncCache<Integer, ProductEntity> productCache;
+    private final long ttlNanos;
+    private final Disposable changeStream;
+
+    private volatile boolean changeStreamActive;
+    private volatile boolean fallbackLogged;
+
+    @Autowired
+    public ProductCache(ReactiveMongoOperations mongoOperations, ObjectProvider<MeterRegistry> meterRegistry,
+                        @Value("${app.cache.products.enabled:true}") boolean cacheEnabled,
+                        @Value("${app.cache.products.maximum-size:10000}") long maximumSize,
+                        @Value("${app.cache.products.ttl-seconds:60}") long ttlSeconds,
+                        @Value("${app.cache.products.change-stream-retry:60s}") Duration changeStreamRetry) {
+        this(mongoOperations, meterRegistry, cacheEnabled, maximumSize, ttlSeconds, changeStreamRetry, Ticker.systemTicker());
+    }
+
+    // The ticker lets the tests expire the entries without waiting for the TTL
+    ProductCache(ReactiveMongoOperations mongoOperations, ObjectProvider<MeterRegistry> meterRegistry, boolean cacheEnabled,
+                 long maximumSize, long ttlSeconds, Duration changeStreamRetry, Ticker ticker) {
+
+        this.mongoOperations = mongoOperations;
+        this.ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+
+        if (!cacheEnabled) {
+            this.productCache = null;
+            this.changeStream = null;
+            return;
+        }
+
+        this.productCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new ChangeStreamExpiry())
+                .ticker(ticker)
+                .recordStats()
+                .buildAsync();
+        meterRegistry.ifAvailable(registry -> {
+            CaffeineCacheMetrics.monitor(registry, productCache, "products");
+            Gauge.builder("product.cache.change-stream", this, cache -> cache.changeStreamActive ? 1 : 0)
+                    .description("1 while a change stream keeps the product cache coherent, 0 in TTL mode")
+                    .register(registry);
+        });
+
+        // The stream ends on a drop or rename of the collection, it is then opened again like after an error
+        this.changeStream = Flux.defer(this::watch)
+                .doOnNext(this::onChange)
+                .concatWith(Mono.error(() -> new IllegalStateException("The change stream was closed")))
+                .doOnError(this::fallBackToTtl)
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, changeStreamRetry))
+                .subscribe();
+    }
+
+    public Mono<ProductEntity> findByProductId(int productId, Function<Integer, Mono<ProductEntity>> loader) {
+        if (productCache == null) return loader.apply(productId);
+
+        // Each subscriber waits on its own dependent future, so a cancelled subscriber cannot cancel a shared load
+        return Mono.fromFuture(() -> productCache
+                .get(productId, (id, executor) -> loader.apply(id).toFuture())
+                .thenApply(Function.identity()));
+    }
+
+    /**
+     * Looks up the products from the cache, the misses are loaded together by a single call of the loader.
+     * Unknown productIds are left out and not cached.
+     */
+    public Flux<ProductEntity> findByProductIds(Collection<Integer> productIds,
+                                                Function<Set<Integer>, Flux<ProductEntity>> loader) {
+        if (productCache == null) return loader.apply(new HashSet<>(productIds));
+
+        return Mono.fromFuture(() -> productCache
+                .getAll(productIds, (ids, executor) -> loader.apply(new HashSet<>(ids))
+                        .collectMap(ProductEntity::getProductId)
+                        .toFuture())
+                .thenApply(Function.identity()))
+                .flatMapIterable(Map::values);
+    }
+
+    public void invalidate(int productId) {
+        if (productCache != null) productCache.synchronous().invalidate(productId);
+    }
+
+    public void invalidateAll() {
+        if (productCache != null) productCache.synchronous().invalidateAll();
+    }
+
+    boolean isChangeStreamActive() {
+        return changeStreamActive;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (changeStream != null) changeStream.dispose();
+    }
+
+    // Starts a little in the past, so the changes made while the stream is being opened are not missed
+    private Flux<ChangeStreamEvent<Document>> watch() {
+        ChangeStreamOptions options = ChangeStreamOptions.builder()
+                .filter(new Document("$match", new Document("operationType",
+                        new Document("$nin", List.of("insert")))))
+                .resumeAt(Instant.now().minus(CLOCK_SKEW_MARGIN))
+                .build();
+
+        return mongoOperations.changeStream(null, mongoOperations.getCollectionName(ProductEntity.class),
+                options, Document.class);
+    }
+
+    private void onChange(ChangeStreamEvent<Document> event) {
+        if (!changeStreamActive) {
+            changeStreamActive = true;
+            LOG.info("onChange: the change stream on the products collection is up, cached products no longer expire");
+        }
+
+        switch (event.getOperationType()) {
+
+            case INSERT:
+            case OTHER:
+                break;
+
+            case UPDATE:
+            case REPLACE:
+            case DELETE:
+                BsonValue id = event.getRaw().getDocumentKey().get("_id");
+                invalidateDocument(id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.toString());
+                break;
+
+            default:
+                LOG.debug("onChange: {} of the products collection, clears the cache", event.getOperationType());
+                invalidateAll();
+        }
+    }
+
+    // The event only has the document id, loads in flight are dropped as well since they may have read the old document
+    private void invalidateDocument(String id) {
+        productCache.asMap().values().removeIf(product -> !product.isDone() || id.equals(documentIdOf(product)));
+    }
+
+    // A retry that fails in TTL mode keeps the entries, they were cached with a TTL and expire on their own
+    private void fallBackToTtl(Throwable error) {
+        if (changeStreamActive) {
+            changeStreamActive = false;
+            invalidateAll();
+        }
+
+        if (fallbackLogged) {
+            LOG.debug("No change stream on the products collection, cached products expire: {}", error.toString());
+        } else {
+            fallbackLogged = true;
+            LOG.warn("No change stream on the products collection, cached products expire after {}s: {}",
+                    Duration.ofNanos(ttlNanos).getSeconds(), error.toString());
+        }
+    }
+
+    private static String documentIdOf(CompletableFuture<ProductEntity> product) {
+        if (product.isCompletedExceptionally()) return null;
+        ProductEntity entity = product.getNow(null);
+        return entity == null ? null : entity.getId();
+    }
+
+    // Entries created while the change stream is up live until it invalidates them or they are evicted by size
+    private class ChangeStreamExpiry implements Expiry<Integer, ProductEntity> {
+
+        @Override
+        public long expireAfterCreate(Integer productId, ProductEntity product, long currentTime) {
+            return changeStreamActive ? Long.MAX_VALUE : ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(Integer productId, ProductEntity product, long currentTime, long currentDuration) {
+            return expireAfterCreate(productId, product, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Integer productId, ProductEntity product, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -11,11 +11,15 @@ import com.habeebcycle.microservice.library.util.http.ServiceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Random;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Function;
 
 @RestController
 public class ProductController implements ProductService {
@@ -25,24 +29,36 @@ public class ProductController implements ProductService {
     private final ServiceUtil serviceUtil;
     private final ProductMapper mapper;
     private final ProductRepository repository;
+    private final ProductBatchWriter batchWriter;
+    private final ProductCache cache;
+    private final int batchMaxSize;
+    private final boolean faultInjectionEnabled;
 
     @Autowired
-    public  ProductController(ProductRepository repository, ProductMapper mapper, ServiceUtil serviceUtil){
+    public  ProductController(ProductRepository repository, ProductBatchWriter batchWriter, ProductCache cache,
+                              ProductMapper mapper, ServiceUtil serviceUtil,
+                              @Value("${app.product.batch.max-size}") int batchMaxSize,
+                              @Value("${app.fault-injection.enabled:false}") boolean faultInjectionEnabled){
         this.repository = repository;
+        this.batchWriter = batchWriter;
+        this.cache = cache;
         this.mapper = mapper;
         this.serviceUtil = serviceUtil;
+        this.batchMaxSize = batchMaxSize;
+        this.faultInjectionEnabled = faultInjectionEnabled;
     }
 
     @Override
     public Mono<Product> getProduct(int productId, int delay, int faultPercent) {
 
+        // The delay and faultPercent parameters are applied by the FaultInjectionFilter before the request gets here
+        if (!faultInjectionEnabled && (delay != 0 || faultPercent != 0)) {
+            LOG.warn("getProduct: ignores delay={} and faultPercent={}, app.fault-injection.enabled is not set",
+                    delay, faultPercent);
+        }
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
-        if (delay > 0) simulateDelay(delay);
-
-        if (faultPercent > 0) throwErrorIfBadLuck(faultPercent);
-
-        return repository.findByProductId(productId)
+        return cache.findByProductId(productId, repository::findByProductId)
                 .switchIfEmpty(Mono.error(new NotFoundException("No product found for productId: " + productId)))
                 .log()
                 .map(mapper::entityToApi)
@@ -52,57 +68,83 @@ public class ProductController implements ProductService {
     }
 
     @Override
-    public Product createProduct(Product product) {
-
-        if (product.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + product.getProductId());
+    public Flux<Product> getProducts(List<Integer> productIds) {
 
-        ProductEntity entity = mapper.apiToEntity(product);
+        if (productIds.isEmpty()) throw new InvalidInputException("No productIds given");
+        if (productIds.size() > batchMaxSize) {
+            throw new InvalidInputException("Too many productIds: " + productIds.size() + ", max is " + batchMaxSize);
+        }
+        // Mapped to the message first, findFirst cannot return a null productId
+        productIds.stream()
+                .filter(productId -> productId == null || productId < 1)
+                .map(productId -> "Invalid productId: " + productId)
+                .findFirst()
+                .ifPresent(message -> {
+                    throw new InvalidInputException(message);
+                });
 
-        Mono<Product> newEntity = repository.save(entity)
-                .log()
-                .onErrorMap(DuplicateKeyException.class,
-                        ex -> new BadRequestException("Duplicate key, Product Id: " + product.getProductId()))
-                .map(mapper::entityToApi);
+        LOG.debug("getProducts: looks up {} products", productIds.size());
+        return cache.findByProductIds(new HashSet<>(productIds), repository::findByProductIdIn)
+                .map(mapper::entityToApi)
+                .map(product -> {product.setServiceAddress(serviceUtil.getServiceAddress());
+                    return product;
+                });
+    }
 
-        return newEntity.block();
+    @Override
+    public Product createProduct(Product product) {
+        return createProductAsync(product).block();
     }
 
     @Override
     public void deleteProduct(int productId) {
+        deleteProductAsync(productId).block();
+    }
 
-        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
-
-        LOG.debug("deleteProduct: tries to delete an entity with productId: {}", productId);
-        repository.findByProductId(productId)
-                .log()
-                .map(repository::delete)
-                .flatMap(e -> e).block();
+    /**
+     * Creates the product without waiting for the result.
+     *
+     * @param product - the product to create
+     * @return the created product, or a BadRequestException if a product with the productId exists
+     */
+    public Mono<Product> createProductAsync(Product product) {
+        return createProduct(product, repository::save);
     }
 
-    private void simulateDelay(int delay) {
-        LOG.debug("Sleeping for {} seconds...", delay);
-        try{
-            Thread.sleep(delay * 1000L);
-        } catch (InterruptedException ignored) {}
-        LOG.debug("Moving on...");
+    /**
+     * Creates the product in a bulk write shared with concurrently created products, used for CREATE events.
+     * Each subscription inserts the same entity, so a retry keeps the id of the first attempt.
+     */
+    public Mono<Product> createProductInBatch(Product product) {
+        return createProduct(product, batchWriter::insert);
     }
 
-    private void throwErrorIfBadLuck(int faultPercent) {
-        int randomThreshold = getRandomNumber(1, 100);
-        if (faultPercent < randomThreshold) {
-            LOG.debug("We got lucky, no error occurred, {} < {}", faultPercent, randomThreshold);
-        } else {
-            LOG.debug("Bad luck, an error occured, {} >= {}", faultPercent, randomThreshold);
-            throw new RuntimeException("Something went wrong...");
-        }
+    private Mono<Product> createProduct(Product product, Function<ProductEntity, Mono<ProductEntity>> save) {
+
+        if (product.getProductId() < 1) return Mono.error(new InvalidInputException("Invalid productId: " + product.getProductId()));
+
+        ProductEntity entity = mapper.apiToEntity(product);
+
+        return save.apply(entity)
+                .log()
+                .onErrorMap(DuplicateKeyException.class,
+                        ex -> new BadRequestException("Duplicate key, Product Id: " + product.getProductId()))
+                .map(mapper::entityToApi);
     }
 
-    private final Random randomNumberGenerator = new Random();
-    private int getRandomNumber(int min, int max) {
-        if (max < min) {
-            throw new RuntimeException("Max must be greater than min");
-        }
+    /**
+     * Deletes the product with a single query, without loading it first.
+     *
+     * @param productId - the id of the product to delete
+     * @return the number of products removed, 0 if there was none
+     */
+    public Mono<Long> deleteProductAsync(int productId) {
+
+        if (productId < 1) return Mono.error(new InvalidInputException("Invalid productId: " + productId));
 
-        return randomNumberGenerator.nextInt((max - min) + 1) + min;
+        LOG.debug("deleteProduct: tries to delete an entity with productId: {}", productId);
+        return repository.deleteByProductId(productId)
+                .log()
+                .doOnSuccess(count -> cache.invalidate(productId));
     }
 }
@@ -4,50 +4,87 @@ import com.habeebcycle.microservice.core.product.controller.ProductController;
 import com.habeebcycle.microservice.library.api.core.product.Product;
 import com.habeebcycle.microservice.library.api.event.DataEvent;
 import com.habeebcycle.microservice.library.util.exceptions.EventProcessingException;
+import com.habeebcycle.microservice.library.util.reactive.OrderedEventProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
+/*
+    A CREATE is handed to the bulk writer without waiting for it, so that the products of many events share a bulk
+    write. A DELETE waits for the CREATEs before it, so a product is never deleted before it is created.
+ */
 @EnableBinding(Sink.class)
-public class MessageProcessor {
+public class MessageProcessor extends OrderedEventProcessor<DataEvent<Integer, Product>> {
 
     private static final Logger LOG = LoggerFactory.getLogger(MessageProcessor.class);
 
+    // The dead-letter topic the Kafka binder uses for the input binding, error.destination.group unless dlqName is set
+    private static final String KAFKA_DLQ_NAME = "${spring.cloud.stream.kafka.bindings.input.consumer.dlqName:" +
+            "error.${spring.cloud.stream.bindings.input.destination:input}.${spring.cloud.stream.bindings.input.group:anonymous}}";
+
     private final ProductController controller;
 
     @Autowired
-    public MessageProcessor(ProductController controller) {
+    public MessageProcessor(ProductController controller,
+                            @Value("${spring.cloud.stream.bindings.input.consumer.maxAttempts:3}") int maxAttempts,
+                            @Value("${spring.cloud.stream.bindings.input.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+                            @Value("${spring.cloud.stream.bindings.input.consumer.backOffMaxInterval:10000}") long backOffMaxInterval,
+                            @Value("${app.product.events.max-in-flight:200}") int maxInFlight,
+                            StreamBridge streamBridge,
+                            @Value(KAFKA_DLQ_NAME) String kafkaDlqName) {
+        super(maxAttempts, Duration.ofMillis(backOffInitialInterval), Duration.ofMillis(backOffMaxInterval), maxInFlight,
+                streamBridge, kafkaDlqName);
         this.controller = controller;
     }
 
     @StreamListener(Sink.INPUT)
-    public void process(DataEvent<Integer, Product> event) {
+    public void process(Message<DataEvent<Integer, Product>> message) {
+        LOG.info("Process message event created at {}...", message.getPayload().getEventCreatedAt());
+        receive(message);
+    }
 
-        LOG.info("Process message event created at {}...", event.getEventCreatedAt());
+    @Override
+    protected boolean isBatched(DataEvent<Integer, Product> event) {
+        return event.getEventType() == DataEvent.Type.CREATE;
+    }
+
+    @Override
+    protected Mono<?> write(DataEvent<Integer, Product> event) {
 
         switch (event.getEventType()) {
 
             case CREATE:
                 Product product = event.getData();
                 LOG.info("Create product with ID: {}", product.getProductId());
-                controller.createProduct(product);
-                break;
+                return controller.createProductInBatch(product);
 
             case DELETE:
                 int productId = event.getKey();
                 LOG.info("Delete product with ProductID: {}", productId);
-                controller.deleteProduct(productId);
-                break;
+                return controller.deleteProductAsync(productId)
+                        .doOnNext(deleted -> LOG.info("Deleted {} products with ProductID: {}", deleted, productId));
 
             default:
                 String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
                 LOG.warn(errorMessage);
-                throw new EventProcessingException(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
         }
+    }
 
-        LOG.info("Message processing done!");
+    // Only CREATE events are batched
+    @Override
+    protected Mono<?> writeUnbatched(DataEvent<Integer, Product> event) {
+        Product product = event.getData();
+        LOG.info("Create product with ID: {}", product.getProductId());
+        return controller.createProductAsync(product);
     }
 }
@@ -1,8 +1,16 @@
 package com.habeebcycle.microservice.core.product.persistence;
 
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Collection;
+
 public interface ProductRepository extends ReactiveCrudRepository<ProductEntity, String> {
     Mono<ProductEntity> findByProductId(int productId);
+
+    // A single $in query for all the products, unknown productIds are left out
+    Flux<ProductEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    Mono<Long> deleteByProductId(int productId);
 }
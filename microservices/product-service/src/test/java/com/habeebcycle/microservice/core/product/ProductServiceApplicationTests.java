@@ -97,6 +97,31 @@ class ProductServiceApplicationTests {
 		assertTrue(sendDeleteProductEvent(productId));
 	}
 
+	@Test
+	void getProductsTest() {
+
+		assertTrue(sendCreateProductEvent(1));
+		assertTrue(sendCreateProductEvent(2));
+		assertTrue(sendCreateProductEvent(3));
+
+		client.get()
+				.uri("/product?ids=1,3,13")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[?(@.productId == 2)]").doesNotExist();
+
+		client.get()
+				.uri("/product?ids=1,-1")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("Invalid productId: -1");
+	}
+
 	@Test
 	void getProductInvalidParameterStringTest() {
 
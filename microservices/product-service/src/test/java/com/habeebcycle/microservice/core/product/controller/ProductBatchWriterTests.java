@@ -0,0 +1,226 @@
+package com.habeebcycle.microservice.core.product.controller;
+
+import com.habeebcycle.microservice.core.product.persistence.ProductEntity;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.WriteConcernError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+
+public class ProductBatchWriterTests {
+
+    private static final int CALLERS = 16;
+
+    private final ReactiveMongoTemplate template = Mockito.mock(ReactiveMongoTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<Document> collection = Mockito.mock(MongoCollection.class);
+
+    // The product ids of each bulk write
+    private final List<List<Integer>> bulkWrites = new CopyOnWriteArrayList<>();
+
+    private ProductBatchWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        Mockito.when(template.getCollectionName(ProductEntity.class)).thenReturn("products");
+        Mockito.when(template.getCollection("products")).thenReturn(Mono.just(collection));
+        Mockito.when(template.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        Mockito.when(template.find(any(Query.class), Mockito.eq(ProductEntity.class))).thenReturn(Flux.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.shutdown();
+    }
+
+    @Test
+    void concurrentInsertsShareBulkWritesTest() throws Exception {
+        writer = new ProductBatchWriter(template, 500, Duration.ofMillis(100), 4);
+        answerBulkWrites(null);
+
+        // Each caller waits for its own insert
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CyclicBarrier start = new CyclicBarrier(CALLERS);
+        List<Future<ProductEntity>> results = IntStream.rangeClosed(1, CALLERS)
+                .mapToObj(productId -> executor.submit(() -> {
+                    start.await();
+                    return writer.insert(new ProductEntity(productId, "n" + productId, productId)).block();
+                }))
+                .collect(Collectors.toList());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < results.size(); i++) {
+            ProductEntity product = results.get(i).get();
+            assertEquals(i + 1, product.getProductId());
+            assertNotNull(product.getId());
+            assertEquals(0, product.getVersion());
+        }
+        assertEquals(CALLERS, bulkWrites.stream().mapToInt(List::size).sum());
+        assertTrue(bulkWrites.stream().anyMatch(bulk -> bulk.size() > 1),
+                "Expected a bulk write of more than one product, got " + bulkWrites);
+    }
+
+    @Test
+    void duplicateFailsOnlyItsOwnInsertTest() {
+        writer = new ProductBatchWriter(template, 3, Duration.ofSeconds(10), 4);
+        answerBulkWrites(1);
+
+        List<Object> results = Mono.zip(
+                        insertResult(new ProductEntity(2, "n2", 2)),
+                        insertResult(new ProductEntity(1, "n1", 1)),
+                        insertResult(new ProductEntity(3, "n3", 3)))
+                .map(tuple -> List.of(tuple.getT1(), tuple.getT2(), tuple.getT3()))
+                .block();
+
+        assertEquals(List.of(List.of(2, 1, 3)), bulkWrites);
+        assertEquals(2, ((ProductEntity) results.get(0)).getProductId());
+        assertTrue(results.get(1) instanceof DuplicateKeyException);
+        assertEquals(3, ((ProductEntity) results.get(2)).getProductId());
+    }
+
+    @Test
+    void writeConcernErrorFailsEveryInsertTest() {
+        writer = new ProductBatchWriter(template, 2, Duration.ofSeconds(10), 4);
+        BulkWriteResult result = BulkWriteResult.acknowledged(2, 0, 0, 0, Collections.emptyList());
+        WriteConcernError error = new WriteConcernError(64, "WriteConcernFailed", "waiting for replication timed out",
+                new BsonDocument());
+        Mockito.when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class)))
+                .thenReturn(Mono.error(new MongoBulkWriteException(result, List.of(), error, new ServerAddress())));
+
+        List<Object> results = Mono.zip(
+                        insertResult(new ProductEntity(1, "n1", 1)),
+                        insertResult(new ProductEntity(2, "n2", 2)))
+                .map(tuple -> List.of(tuple.getT1(), tuple.getT2()))
+                .block();
+
+        // The inserts were applied on the primary, but are not known to be durable
+        assertNotNull(results);
+        assertTrue(results.stream().allMatch(DataIntegrityViolationException.class::isInstance), results.toString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void retryAfterWriteConcernErrorTest() {
+        writer = new ProductBatchWriter(template, 1, Duration.ofSeconds(10), 4);
+        ProductEntity entity = new ProductEntity(1, "n1", 1);
+        List<String> insertedIds = new CopyOnWriteArrayList<>();
+
+        // The first insert is stored despite its write concern error, so its retry is a duplicate of it
+        WriteConcernError writeConcernError = new WriteConcernError(64, "WriteConcernFailed",
+                "waiting for replication timed out", new BsonDocument());
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0);
+        Mockito.when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenAnswer(invocation -> {
+            Document inserted = ((List<InsertOneModel<Document>>) invocation.getArgument(0)).get(0).getDocument();
+            insertedIds.add(String.valueOf(inserted.get("_id")));
+            return insertedIds.size() == 1
+                    ? Mono.error(new MongoBulkWriteException(BulkWriteResult.acknowledged(1, 0, 0, 0, Collections.emptyList()),
+                            List.of(), writeConcernError, new ServerAddress()))
+                    : Mono.error(new MongoBulkWriteException(BulkWriteResult.acknowledged(0, 0, 0, 0, Collections.emptyList()),
+                            List.of(duplicate), null, new ServerAddress()));
+        });
+        Mockito.when(template.find(any(Query.class), Mockito.eq(ProductEntity.class))).thenReturn(Flux.just(entity));
+
+        ProductEntity stored = writer.insert(entity)
+                .retryWhen(Retry.max(1).filter(DataIntegrityViolationException.class::isInstance))
+                .block();
+
+        assertSame(entity, stored);
+        assertEquals(2, insertedIds.size());
+        assertEquals(insertedIds.get(0), insertedIds.get(1));
+    }
+
+    @Test
+    void duplicateOfAnotherDocumentFailsTest() {
+        writer = new ProductBatchWriter(template, 1, Duration.ofSeconds(10), 4);
+        answerBulkWrites(1);
+
+        // No stored document has the id of the insert
+        assertThrows(DuplicateKeyException.class, () -> writer.insert(new ProductEntity(1, "n1", 1)).block());
+    }
+
+    @Test
+    void boundedConcurrentBulkWritesTest() {
+        writer = new ProductBatchWriter(template, 1, Duration.ofMillis(100), 3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        // Bulk writes of a single product, each answered after a delay
+        Mockito.when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return Mono.delay(Duration.ofMillis(50))
+                    .map(tick -> BulkWriteResult.acknowledged(1, 0, 0, 0, Collections.emptyList()))
+                    .doOnNext(result -> inFlight.decrementAndGet());
+        });
+
+        List<ProductEntity> products = Flux.range(1, 12)
+                .flatMap(productId -> writer.insert(new ProductEntity(productId, "n" + productId, productId)))
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertNotNull(products);
+        assertEquals(12, products.size());
+        assertEquals(3, maxInFlight.get());
+    }
+
+    private Mono<Object> insertResult(ProductEntity entity) {
+        return writer.insert(entity).cast(Object.class).onErrorResume(Mono::just);
+    }
+
+    // Records the bulk writes, failing the insert of duplicateProductId with a duplicate key error
+    @SuppressWarnings("unchecked")
+    private void answerBulkWrites(Integer duplicateProductId) {
+        Mockito.when(collection.bulkWrite(anyList(), any(BulkWriteOptions.class))).thenAnswer(invocation -> {
+            List<Integer> productIds = ((List<InsertOneModel<Document>>) invocation.getArgument(0)).stream()
+                    .map(insert -> insert.getDocument().getInteger("productId"))
+                    .collect(Collectors.toList());
+            bulkWrites.add(productIds);
+
+            int duplicate = productIds.indexOf(duplicateProductId);
+            if (duplicate < 0) {
+                return Mono.just(BulkWriteResult.acknowledged(productIds.size(), 0, 0, 0, Collections.emptyList()));
+            }
+            BulkWriteResult result = BulkWriteResult.acknowledged(productIds.size() - 1, 0, 0, 0, Collections.emptyList());
+            BulkWriteError error = new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), duplicate);
+            return Mono.error(new MongoBulkWriteException(result, List.of(error), null, new ServerAddress()));
+        });
+    }
+}
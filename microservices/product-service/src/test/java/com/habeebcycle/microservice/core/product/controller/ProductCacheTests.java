@@ -0,0 +1,180 @@
+package com.habeebcycle.microservice.core.product.controller;
+
+import com.habeebcycle.microservice.core.product.persistence.ProductEntity;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+public class ProductCacheTests {
+
+    private final ReactiveMongoOperations mongoOperations = Mockito.mock(ReactiveMongoOperations.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+    private final ProductEntity product = new ProductEntity(1, "n", 1);
+
+    private ProductCache cache;
+
+    @AfterEach
+    void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    void changeStreamInvalidationTest() {
+        Sinks.Many<ChangeStreamEvent<Document>> changes = Sinks.many().multicast().onBackpressureBuffer();
+        cache = newCache(changes.asFlux());
+
+        // The stream is only up once it delivers an event
+        assertFalse(cache.isChangeStreamActive());
+        changes.tryEmitNext(changeEvent(OperationType.INSERT, new ObjectId().toHexString()));
+        assertTrue(cache.isChangeStreamActive());
+        assertEquals(1.0, meterRegistry.get("product.cache.change-stream").gauge().value());
+
+        assertEquals("n", find().getName());
+        assertEquals("n", find().getName());
+        assertEquals(1, loads.get());
+
+        // Inserts and changes of other products keep the entry
+        changes.tryEmitNext(changeEvent(OperationType.INSERT, new ObjectId().toHexString()));
+        changes.tryEmitNext(changeEvent(OperationType.UPDATE, new ObjectId().toHexString()));
+        find();
+        assertEquals(1, loads.get());
+
+        changes.tryEmitNext(changeEvent(OperationType.UPDATE, product.getId()));
+        find();
+        assertEquals(2, loads.get());
+
+        changes.tryEmitNext(changeEvent(OperationType.DELETE, product.getId()));
+        find();
+        assertEquals(3, loads.get());
+
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "products").tag("result", "hit").functionCounter().count());
+        assertEquals(3.0, meterRegistry.get("cache.gets").tag("cache", "products").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void ttlFallbackTest() {
+        cache = newCache(Flux.error(new UncategorizedMongoDbException("The $changeStream stage is only supported on replica sets", null)));
+        assertFalse(cache.isChangeStreamActive());
+        assertEquals(0.0, meterRegistry.get("product.cache.change-stream").gauge().value());
+
+        find();
+        find();
+        assertEquals(1, loads.get());
+
+        nanos.addAndGet(Duration.ofMillis(1100).toNanos());
+        find();
+        assertEquals(2, loads.get());
+
+        cache.invalidate(product.getProductId());
+        find();
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void failedRetriesKeepTheCacheTest() {
+        Sinks.Many<ChangeStreamEvent<Document>> changes = Sinks.many().multicast().onBackpressureBuffer();
+        Flux<ChangeStreamEvent<Document>> unsupported = Flux.error(new UncategorizedMongoDbException("Not primary", null));
+        Mockito.when(mongoOperations.getCollectionName(ProductEntity.class)).thenReturn("products");
+        Mockito.when(mongoOperations.changeStream(any(), any(), any(), Mockito.eq(Document.class)))
+                .thenReturn(changes.asFlux(), unsupported);
+        cache = newCache(Duration.ofMillis(10));
+        changes.tryEmitNext(changeEvent(OperationType.INSERT, new ObjectId().toHexString()));
+        find();
+
+        // The failure of a stream that was up clears the cache
+        changes.tryEmitError(new UncategorizedMongoDbException("Connection lost", null));
+        assertFalse(cache.isChangeStreamActive());
+        find();
+        assertEquals(2, loads.get());
+
+        // The failed retries in TTL mode neither clear the cache nor flap the gauge
+        Mockito.verify(mongoOperations, Mockito.timeout(5000).atLeast(5))
+                .changeStream(any(), any(), any(), Mockito.eq(Document.class));
+        find();
+        assertEquals(2, loads.get());
+        assertFalse(cache.isChangeStreamActive());
+        assertEquals(0.0, meterRegistry.get("product.cache.change-stream").gauge().value());
+    }
+
+    @Test
+    void findByProductIdsTest() {
+        cache = newCache(Flux.never());
+        find();
+
+        List<Set<Integer>> loaded = new ArrayList<>();
+        ProductEntity other = new ProductEntity(2, "n2", 2);
+        Flux<ProductEntity> products = cache.findByProductIds(List.of(1, 2, 3), productIds -> {
+            loaded.add(productIds);
+            return Flux.just(other);
+        });
+
+        StepVerifier.create(products.map(ProductEntity::getProductId).sort())
+                .expectNext(1, 2)
+                .verifyComplete();
+        assertEquals(List.of(Set.of(2, 3)), loaded);
+
+        // The found product is cached, the unknown one is not
+        StepVerifier.create(cache.findByProductIds(List.of(2, 3), productIds -> {
+                    loaded.add(productIds);
+                    return Flux.empty();
+                }).map(ProductEntity::getProductId))
+                .expectNext(2)
+                .verifyComplete();
+        assertEquals(List.of(Set.of(2, 3), Set.of(3)), loaded);
+    }
+
+    private ProductEntity find() {
+        return cache.findByProductId(product.getProductId(), productId -> Mono.fromCallable(() -> {
+            loads.incrementAndGet();
+            return product;
+        })).block();
+    }
+
+    private ProductCache newCache(Flux<ChangeStreamEvent<Document>> changes) {
+        Mockito.when(mongoOperations.getCollectionName(ProductEntity.class)).thenReturn("products");
+        Mockito.when(mongoOperations.changeStream(any(), any(), any(), Mockito.eq(Document.class))).thenReturn(changes);
+        return newCache(Duration.ofMinutes(1));
+    }
+
+    private ProductCache newCache(Duration changeStreamRetry) {
+        product.setId(new ObjectId().toHexString());
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", meterRegistry);
+        return new ProductCache(mongoOperations, beanFactory.getBeanProvider(MeterRegistry.class),
+                true, 100, 1, changeStreamRetry, nanos::get);
+    }
+
+    private static ChangeStreamEvent<Document> changeEvent(OperationType operationType, String id) {
+        BsonDocument documentKey = new BsonDocument("_id", new BsonObjectId(new ObjectId(id)));
+        return new ChangeStreamEvent<>(new ChangeStreamDocument<>(operationType, new BsonDocument(), null, null,
+                null, documentKey, null, null, null, null), Document.class, null);
+    }
+}
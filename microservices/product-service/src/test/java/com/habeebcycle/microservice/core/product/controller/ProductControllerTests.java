@@ -0,0 +1,28 @@
+package com.habeebcycle.microservice.core.product.controller;
+
+import com.habeebcycle.microservice.library.util.exceptions.InvalidInputException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductControllerTests {
+
+    private final ProductController controller = new ProductController(null, null, null, null, null, 3, false);
+
+    @Test
+    void getProductsInvalidIdsTest() {
+        assertInvalid(List.of(), "No productIds given");
+        assertInvalid(List.of(1, 2, 3, 4), "Too many productIds: 4, max is 3");
+        assertInvalid(List.of(1, -1), "Invalid productId: -1");
+        assertInvalid(Arrays.asList(1, null), "Invalid productId: null");
+        assertInvalid(Arrays.asList(null, 0), "Invalid productId: null");
+    }
+
+    private void assertInvalid(List<Integer> productIds, String message) {
+        InvalidInputException error = assertThrows(InvalidInputException.class, () -> controller.getProducts(productIds));
+        assertEquals(message, error.getMessage());
+    }
+}
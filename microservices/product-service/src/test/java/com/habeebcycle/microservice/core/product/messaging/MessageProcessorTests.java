@@ -0,0 +1,119 @@
+package com.habeebcycle.microservice.core.product.messaging;
+
+import com.habeebcycle.microservice.core.product.controller.ProductController;
+import com.habeebcycle.microservice.library.api.core.product.Product;
+import com.habeebcycle.microservice.library.api.event.DataEvent;
+import com.habeebcycle.microservice.library.util.exceptions.BadRequestException;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageProcessorTests {
+
+    private final ProductController controller = Mockito.mock(ProductController.class);
+
+    private final Channel channel = Mockito.mock(Channel.class);
+
+    private final MessageProcessor processor = new MessageProcessor(controller, 3, 10, 10, 200,
+            Mockito.mock(StreamBridge.class), "error.products.productsGroup");
+
+    // The controller calls in the order they were made
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        processor.shutdown();
+    }
+
+    @Test
+    void deleteWaitsForEarlierCreatesTest() throws IOException {
+        Sinks.One<Product> firstWritten = Sinks.one();
+        answerCreate(1, firstWritten.asMono());
+        answerCreate(2, Mono.just(new Product(2, "n2", 2, "")));
+        answerDelete(1);
+
+        // The consumer thread hands over all events without waiting for the first bulk write
+        sendAcknowledged(1, createEvent(1));
+        sendAcknowledged(2, createEvent(2));
+        sendAcknowledged(3, new DataEvent<>(DataEvent.Type.DELETE, 1, null));
+
+        assertEquals(List.of("create 1", "create 2"), calls);
+        Mockito.verify(channel, Mockito.never()).basicAck(Mockito.anyLong(), Mockito.anyBoolean());
+
+        firstWritten.tryEmitValue(new Product(1, "n1", 1, ""));
+
+        // Acknowledged in the order of the events
+        InOrder acknowledged = Mockito.inOrder(channel);
+        acknowledged.verify(channel, Mockito.timeout(5000)).basicAck(1, false);
+        acknowledged.verify(channel, Mockito.timeout(5000)).basicAck(2, false);
+        acknowledged.verify(channel, Mockito.timeout(5000)).basicAck(3, false);
+        assertEquals(List.of("create 1", "create 2", "delete 1"), calls);
+    }
+
+    @Test
+    void failedCreateIsRejectedTest() throws IOException {
+        answerCreate(1, Mono.error(new BadRequestException("Duplicate key, Product Id: 1")));
+
+        sendAcknowledged(1, createEvent(1));
+
+        // A duplicate is not retried
+        Mockito.verify(channel, Mockito.timeout(5000)).basicNack(1, false, false);
+        Mockito.verify(channel, Mockito.never()).basicAck(Mockito.anyLong(), Mockito.anyBoolean());
+        assertEquals(List.of("create 1"), calls);
+    }
+
+    @Test
+    void unacknowledgedEventWaitsForItsResultTest() {
+        Mockito.when(controller.createProductAsync(Mockito.argThat(p -> p != null && p.getProductId() == 1)))
+                .thenReturn(Mono.error(new BadRequestException("Duplicate key, Product Id: 1")));
+
+        // Without a channel the consumer thread waits, so the binder sees the failure and retries it
+        BadRequestException error = assertThrows(BadRequestException.class,
+                () -> processor.process(new GenericMessage<>(createEvent(1))));
+        assertEquals("Duplicate key, Product Id: 1", error.getMessage());
+
+        // Nothing could join the batch while the consumer thread waits, so it is not batched
+        Mockito.verify(controller, Mockito.never()).createProductInBatch(Mockito.any());
+    }
+
+    private void answerCreate(int productId, Mono<Product> result) {
+        Mockito.when(controller.createProductInBatch(Mockito.argThat(p -> p != null && p.getProductId() == productId)))
+                .thenAnswer(invocation -> {
+                    calls.add("create " + productId);
+                    return result;
+                });
+    }
+
+    private void answerDelete(int productId) {
+        Mockito.when(controller.deleteProductAsync(productId)).thenReturn(Mono.defer(() -> {
+            calls.add("delete " + productId);
+            return Mono.just(1L);
+        }));
+    }
+
+    private DataEvent<Integer, Product> createEvent(int productId) {
+        return new DataEvent<>(DataEvent.Type.CREATE, productId, new Product(productId, "n" + productId, productId, null));
+    }
+
+    // Delivered like the RabbitMQ binder does with manual acknowledgement
+    private void sendAcknowledged(long deliveryTag, DataEvent<Integer, Product> event) {
+        processor.process(MessageBuilder.withPayload(event)
+                .setHeader(AmqpHeaders.CHANNEL, channel)
+                .setHeader(AmqpHeaders.DELIVERY_TAG, deliveryTag)
+                .build());
+    }
+}
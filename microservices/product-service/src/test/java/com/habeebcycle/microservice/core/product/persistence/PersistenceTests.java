@@ -8,6 +8,8 @@ import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
 import reactor.test.StepVerifier;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @DataMongoTest(properties = {"spring.cloud.config.enabled=false"})
@@ -71,6 +73,35 @@ public class PersistenceTests {
                 .verifyComplete();
     }
 
+    @Test
+    void deleteByProductIdTest() {
+        StepVerifier.create(repository.deleteByProductId(savedEntity.getProductId()))
+                .expectNext(1L)
+                .verifyComplete();
+
+        StepVerifier.create(repository.existsById(savedEntity.getId()))
+                .expectNext(false)
+                .verifyComplete();
+
+        StepVerifier.create(repository.deleteByProductId(savedEntity.getProductId()))
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+    @Test
+    void getByProductIdInTest() {
+        StepVerifier.create(repository.save(new ProductEntity(2, "n2", 2))).expectNextCount(1).verifyComplete();
+        StepVerifier.create(repository.save(new ProductEntity(3, "n3", 3))).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(repository.findByProductIdIn(List.of(1, 3, 4)).map(ProductEntity::getProductId).sort())
+                .expectNext(1, 3)
+                .verifyComplete();
+
+        StepVerifier.create(repository.findByProductIdIn(List.of(2)))
+                .expectNextMatches(product -> product.getName().equals("n2") && product.getWeight() == 2)
+                .verifyComplete();
+    }
+
     @Test
    void getByProductId() {
         StepVerifier.create(repository.findByProductId(savedEntity.getProductId()))
@@ -0,0 +1,46 @@
+package com.habeebcycle.microservice.core.recommendation.config;
+
+import io.lettuce.core.metrics.CommandLatencyRecorder;
+import io.lettuce.core.protocol.ProtocolKeyword;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latency of every Lettuce command as Micrometer timers tagged with the command type:
+ * lettuce.command.firstresponse - time until the first response byte arrived
+ * lettuce.command.completion    - time until the command completed
+ */
+public class MicrometerCommandLatencyRecorder implements CommandLatencyRecorder {
+
+    private final MeterRegistry registry;
+    private final boolean histogram;
+    private final Map<String, Timer> firstResponseTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> completionTimers = new ConcurrentHashMap<>();
+
+    public MicrometerCommandLatencyRecorder(MeterRegistry registry, boolean histogram) {
+        this.registry = registry;
+        this.histogram = histogram;
+    }
+
+    @Override
+    public void recordCommandLatency(SocketAddress local, SocketAddress remote, ProtocolKeyword commandType,
+                                     long firstResponseLatency, long completionLatency) {
+        String command = commandType.name();
+        firstResponseTimers.computeIfAbsent(command, c -> timer("lettuce.command.firstresponse", c))
+                .record(firstResponseLatency, TimeUnit.NANOSECONDS);
+        completionTimers.computeIfAbsent(command, c -> timer("lettuce.command.completion", c))
+                .record(completionLatency, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String name, String command) {
+        return Timer.builder(name)
+                .tag("command", command)
+                .publishPercentileHistogram(histogram)
+                .register(registry);
+    }
+}
@@ -1,17 +1,52 @@
 package com.habeebcycle.microservice.core.recommendation.config;
 
 import com.habeebcycle.microservice.core.recommendation.persistence.RecommendationEntity;
+import com.habeebcycle.microservice.core.recommendation.persistence.RecommendationEntitySerializer;
+import com.habeebcycle.microservice.core.recommendation.persistence.RecommendationKeyLayout;
+import com.habeebcycle.microservice.core.recommendation.persistence.RecommendationRepoImpl;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisSentinelConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.ReactiveRedisOperations;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.*;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Stream;
 
 @Configuration
 @EnableCaching
@@ -28,6 +63,91 @@ public class RedisConfig {
     @Value("${spring.redis.password}")
     private String redisPassword;
 
+    // Comma separated host:port list, connects to a Redis Cluster instead of spring.redis.host when set
+    @Value("${spring.redis.cluster.nodes:}")
+    private List<String> clusterNodes;
+
+    // SINGLE keeps all recommendations in one hash, SHARDED spreads them over shard-buckets hashes by productId
+    @Value("${app.redis.key-layout:single}")
+    private String keyLayout;
+
+    @Value("${app.redis.shard-buckets:1024}")
+    private int shardBuckets;
+
+    // Sentinel monitored master, used instead of spring.redis.host when set
+    @Value("${spring.redis.sentinel.master:}")
+    private String sentinelMaster;
+
+    @Value("${spring.redis.sentinel.nodes:}")
+    private List<String> sentinelNodes;
+
+    // Comma separated host:port list of replicas of spring.redis.host
+    @Value("${app.redis.replica-nodes:}")
+    private List<String> replicaNodes;
+
+    // Lettuce ReadFrom setting for the read-only queries when replicas are configured
+    @Value("${app.redis.read-from:replicaPreferred}")
+    private String readFrom;
+
+    // JSON or SMILE, values in either format are always readable
+    @Value("${app.redis.value-format:json}")
+    private String valueFormat;
+
+    @Value("${app.redis.compression-threshold:1024}")
+    private int compressionThreshold;
+
+    @Value("${spring.redis.timeout:5s}")
+    private Duration commandTimeout;
+
+    @Value("${spring.redis.connect-timeout:10s}")
+    private Duration connectTimeout;
+
+    @Value("${spring.redis.lettuce.shutdown-timeout:100ms}")
+    private Duration shutdownTimeout;
+
+    /*
+        The reactive repository shares one native connection, commands are pipelined on it. The pool serves
+        blocking calls that need a dedicated connection (transactions, blocking pops), and every connection
+        when share-native-connection is false.
+     */
+    @Value("${spring.redis.lettuce.pool.enabled:false}")
+    private boolean poolEnabled;
+
+    @Value("${spring.redis.lettuce.pool.max-active:8}")
+    private int poolMaxActive;
+
+    @Value("${spring.redis.lettuce.pool.max-idle:8}")
+    private int poolMaxIdle;
+
+    @Value("${spring.redis.lettuce.pool.min-idle:0}")
+    private int poolMinIdle;
+
+    @Value("${spring.redis.lettuce.pool.max-wait:-1ms}")
+    private Duration poolMaxWait;
+
+    @Value("${app.redis.lettuce.share-native-connection:true}")
+    private boolean shareNativeConnection;
+
+    // Commands buffered before a flush in blocking pipelines, 1 flushes every command
+    @Value("${app.redis.lettuce.pipelining-flush-after:1}")
+    private int pipeliningFlushAfter;
+
+    @Value("${app.redis.lettuce.keep-alive:true}")
+    private boolean keepAlive;
+
+    // Netty I/O and computation threads, 0 keeps the Lettuce default of one per available processor
+    @Value("${app.redis.lettuce.io-threads:0}")
+    private int ioThreads;
+
+    @Value("${app.redis.lettuce.computation-threads:0}")
+    private int computationThreads;
+
+    @Value("${app.redis.lettuce.latency-metrics.enabled:true}")
+    private boolean latencyMetricsEnabled;
+
+    @Value("${app.redis.lettuce.latency-metrics.histogram:false}")
+    private boolean latencyMetricsHistogram;
+
     /*@Bean
     ReactiveRedisConnectionFactory redisConnectionFactory() {
         return lettuceConnectionFactory();
@@ -47,23 +167,193 @@ public class RedisConfig {
     }*/
 
     @Bean
+    @Primary
     public ReactiveRedisOperations<String, RecommendationEntity> redisOperations(LettuceConnectionFactory connectionFactory) {
-        RedisSerializationContext<String, RecommendationEntity> serializationContext = RedisSerializationContext
+        return new ReactiveRedisTemplate<>(connectionFactory, recommendationSerializationContext());
+    }
+
+    @Bean
+    public ReactiveRedisOperations<String, RecommendationEntity> readOperations(
+            LettuceConnectionFactory connectionFactory,
+            @Qualifier("readConnectionFactory") ObjectProvider<LettuceConnectionFactory> readConnectionFactory) {
+        return new ReactiveRedisTemplate<>(readConnectionFactory.getIfAvailable(() -> connectionFactory),
+                recommendationSerializationContext());
+    }
+
+    private RedisSerializationContext<String, RecommendationEntity> recommendationSerializationContext() {
+        return RedisSerializationContext
                 .<String, RecommendationEntity>newSerializationContext(new StringRedisSerializer())
                 .key(new StringRedisSerializer())
                 .value(new GenericToStringSerializer<>(RecommendationEntity.class))
                 .hashKey(new StringRedisSerializer())
-                .hashValue(new GenericJackson2JsonRedisSerializer())
+                .hashValue(recommendationSerializer())
                 .build();
-        return new ReactiveRedisTemplate<>(connectionFactory, serializationContext);
     }
 
     @Bean
-    LettuceConnectionFactory lettuceConnectionFactory() {
+    public RecommendationEntitySerializer recommendationSerializer() {
+        LOG.info("Writes recommendations as {} with compression threshold {}", valueFormat, compressionThreshold);
+        return new RecommendationEntitySerializer(
+                RecommendationEntitySerializer.Format.valueOf(valueFormat.toUpperCase()), compressionThreshold);
+    }
+
+    @Bean
+    public RecommendationKeyLayout recommendationKeyLayout() {
+        if ("sharded".equalsIgnoreCase(keyLayout)) {
+            LOG.info("Stores recommendations in {} shards", shardBuckets);
+            return RecommendationKeyLayout.sharded(RecommendationRepoImpl.KEY, shardBuckets);
+        }
+        if (isCluster()) {
+            throw new IllegalStateException("A Redis Cluster needs app.redis.key-layout=sharded");
+        }
+        return RecommendationKeyLayout.single(RecommendationRepoImpl.KEY);
+    }
+
+    @Bean
+    @Primary
+    public ReactiveStringRedisTemplate indexOperations(LettuceConnectionFactory connectionFactory) {
+        return new ReactiveStringRedisTemplate(connectionFactory);
+    }
+
+    @Bean
+    public ReactiveStringRedisTemplate indexReadOperations(
+            LettuceConnectionFactory connectionFactory,
+            @Qualifier("readConnectionFactory") ObjectProvider<LettuceConnectionFactory> readConnectionFactory) {
+        return new ReactiveStringRedisTemplate(readConnectionFactory.getIfAvailable(() -> connectionFactory));
+    }
+
+    @Bean
+    public ReactiveRedisMessageListenerContainer changeListenerContainer(LettuceConnectionFactory connectionFactory) {
+        return new ReactiveRedisMessageListenerContainer(connectionFactory);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    ClientResources lettuceClientResources(ObjectProvider<MeterRegistry> meterRegistry) {
+        DefaultClientResources.Builder builder = DefaultClientResources.builder();
+        if (ioThreads > 0) builder.ioThreadPoolSize(ioThreads);
+        if (computationThreads > 0) builder.computationThreadPoolSize(computationThreads);
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (latencyMetricsEnabled && registry != null) {
+            builder.commandLatencyRecorder(new MicrometerCommandLatencyRecorder(registry, latencyMetricsHistogram));
+        }
+        return builder.build();
+    }
+
+    @Bean
+    @Primary
+    LettuceConnectionFactory lettuceConnectionFactory(ClientResources lettuceClientResources) {
+        return connectionFactory(lettuceClientResources, null);
+    }
+
+    /*
+        Serves the read-only repository queries when replicas, sentinels or a cluster are configured, sending
+        them to the nodes selected by app.redis.read-from. Otherwise they share the primary factory.
+     */
+    @Bean
+    @Conditional(ReplicatedCondition.class)
+    LettuceConnectionFactory readConnectionFactory(ClientResources lettuceClientResources) {
+        LOG.info("Reads recommendations from {}", readFrom);
+        return connectionFactory(lettuceClientResources, ReadFrom.valueOf(readFrom));
+    }
+
+    private LettuceConnectionFactory connectionFactory(ClientResources clientResources, ReadFrom readFrom) {
+        LettuceConnectionFactory connectionFactory;
+        if (isCluster()) {
+            LOG.info("Connects to Redis Cluster nodes {}", clusterNodes);
+            RedisClusterConfiguration redisClusterConfig = new RedisClusterConfiguration(clusterNodes);
+            redisClusterConfig.setPassword(redisPassword);
+            connectionFactory = new LettuceConnectionFactory(redisClusterConfig, lettuceClientConfiguration(
+                    clientResources, readFrom, ClusterClientOptions.builder()
+                            .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                                    .enableAllAdaptiveRefreshTriggers()
+                                    .build())
+                            .socketOptions(socketOptions())
+                            .build()));
+        } else {
+            connectionFactory = new LettuceConnectionFactory(redisConfiguration(readFrom != null),
+                    lettuceClientConfiguration(clientResources, readFrom,
+                            ClientOptions.builder().socketOptions(socketOptions()).build()));
+        }
+
+        connectionFactory.setShareNativeConnection(shareNativeConnection);
+        connectionFactory.setPipeliningFlushPolicy(pipeliningFlushAfter > 1
+                ? LettuceConnection.PipeliningFlushPolicy.buffered(pipeliningFlushAfter)
+                : LettuceConnection.PipeliningFlushPolicy.flushEachCommand());
+        return connectionFactory;
+    }
+
+    private RedisConfiguration redisConfiguration(boolean withReplicas) {
+        if (!sentinelMaster.isBlank()) {
+            LOG.info("Connects to master {} through sentinels {}", sentinelMaster, sentinelNodes);
+            RedisSentinelConfiguration redisSentinelConfig =
+                    new RedisSentinelConfiguration(sentinelMaster, new HashSet<>(sentinelNodes));
+            redisSentinelConfig.setPassword(redisPassword);
+            return redisSentinelConfig;
+        }
+
+        if (withReplicas) {
+            RedisStaticMasterReplicaConfiguration redisMasterReplicaConfig =
+                    new RedisStaticMasterReplicaConfiguration(redisHost, redisPort);
+            replicaNodes.stream()
+                    .filter(node -> !node.isBlank())
+                    .map(node -> node.trim().split(":"))
+                    .forEach(node -> redisMasterReplicaConfig.node(node[0], Integer.parseInt(node[1])));
+            redisMasterReplicaConfig.setPassword(redisPassword);
+            return redisMasterReplicaConfig;
+        }
+
         RedisStandaloneConfiguration redisStandaloneConfig = new RedisStandaloneConfiguration();
         redisStandaloneConfig.setHostName(redisHost);
         redisStandaloneConfig.setPort(redisPort);
         redisStandaloneConfig.setPassword(redisPassword);
-        return new LettuceConnectionFactory(redisStandaloneConfig);
+        return redisStandaloneConfig;
+    }
+
+    private LettuceClientConfiguration lettuceClientConfiguration(ClientResources clientResources, ReadFrom readFrom,
+                                                                  ClientOptions clientOptions) {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder;
+        if (poolEnabled) {
+            GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
+            poolConfig.setMaxTotal(poolMaxActive);
+            poolConfig.setMaxIdle(poolMaxIdle);
+            poolConfig.setMinIdle(poolMinIdle);
+            poolConfig.setMaxWaitMillis(poolMaxWait.toMillis());
+            builder = LettucePoolingClientConfiguration.builder().poolConfig(poolConfig);
+        } else {
+            builder = LettuceClientConfiguration.builder();
+        }
+
+        if (readFrom != null) builder.readFrom(readFrom);
+
+        LOG.info("Lettuce client with command timeout {}, connection pool {}", commandTimeout,
+                poolEnabled ? "max " + poolMaxActive : "disabled");
+        return builder
+                .clientResources(clientResources)
+                .clientOptions(clientOptions)
+                .commandTimeout(commandTimeout)
+                .shutdownTimeout(shutdownTimeout)
+                .build();
+    }
+
+    private SocketOptions socketOptions() {
+        return SocketOptions.builder()
+                .connectTimeout(connectTimeout)
+                .keepAlive(keepAlive)
+                .build();
+    }
+
+    private boolean isCluster() {
+        return clusterNodes.stream().anyMatch(node -> !node.isBlank());
+    }
+
+    static class ReplicatedCondition implements Condition {
+
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            Environment environment = context.getEnvironment();
+            return Stream.of("spring.redis.cluster.nodes", "spring.redis.sentinel.master", "app.redis.replica-nodes")
+                    .anyMatch(property -> StringUtils.hasText(environment.getProperty(property)));
+        }
     }
 }
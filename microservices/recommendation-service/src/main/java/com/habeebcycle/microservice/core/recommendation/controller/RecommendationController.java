@@ -60,7 +60,16 @@ public class RecommendationController implements RecommendationService {
 
     @Override
     public void deleteRecommendations(int productId) {
+        deleteRecommendationsByProductId(productId);
+    }
+
+    /**
+     * @param productId - the product whose recommendations are deleted
+     * @return the number of recommendations removed
+     */
+    public long deleteRecommendationsByProductId(int productId) {
         LOG.debug("deleteRecommendations: tries to delete recommendations for the product with productId: {}", productId);
-        repository.deleteByProductId(productId).block();
+        Long deleted = repository.deleteByProductId(productId).block();
+        return deleted == null ? 0 : deleted;
     }
 }
@@ -1,44 +1,139 @@
 package com.habeebcycle.microservice.core.recommendation.controller;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.habeebcycle.microservice.core.recommendation.persistence.RecommendationEntity;
 import com.habeebcycle.microservice.core.recommendation.persistence.RecommendationRepoImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class RecommendationRepoService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(RecommendationRepoService.class);
+
     private final RecommendationRepoImpl repository;
 
+    /*
+        Near-cache of the recommendations of a product. Every write script publishes the productIds it touched
+        on RecommendationRepoImpl.CHANGES_CHANNEL, so each instance drops its entry whichever instance handled
+        the event. Invalidating also discards a load that is still in flight, so a read racing with a write
+        is never cached. The TTL bounds staleness if a notification is lost, and the whole cache is cleared
+        whenever the subscription is (re)established. Entries are loaded from the primary, since a replica may
+        not have the write yet that the notification announced.
+     */
+    private final AsyncCache<Integer, List<RecommendationEntity>> productCache;
+    private final Disposable changeSubscription;
+
     @Autowired
-    public RecommendationRepoService(RecommendationRepoImpl repository) {
+    public RecommendationRepoService(RecommendationRepoImpl repository,
+                                     ReactiveRedisMessageListenerContainer changeListenerContainer,
+                                     ObjectProvider<MeterRegistry> meterRegistry,
+                                     @Value("${app.cache.recommendations.enabled:true}") boolean cacheEnabled,
+                                     @Value("${app.cache.recommendations.maximum-size:10000}") long maximumSize,
+                                     @Value("${app.cache.recommendations.ttl-seconds:60}") long ttlSeconds) {
         this.repository = repository;
+
+        if (!cacheEnabled) {
+            this.productCache = null;
+            this.changeSubscription = null;
+            return;
+        }
+
+        this.productCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .buildAsync();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, productCache, "recommendations"));
+
+        this.changeSubscription = changeListenerContainer
+                .receive(ChannelTopic.of(RecommendationRepoImpl.CHANGES_CHANNEL))
+                .doOnSubscribe(s -> productCache.synchronous().invalidateAll())
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnError(e -> LOG.warn("Recommendation change subscription failed: {}", e.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::invalidate);
+    }
+
+    @PreDestroy
+    public void stopChangeSubscription() {
+        if (changeSubscription != null) changeSubscription.dispose();
     }
 
     public Mono<RecommendationEntity> save(RecommendationEntity recommendation) {
-        return repository.save(recommendation);
+        return repository.save(recommendation)
+                .doFinally(s -> invalidate(recommendation.getProductId()));
+    }
+
+    public Flux<RecommendationEntity> saveAll(Iterable<RecommendationEntity> recommendations) {
+        return saveAll(Flux.fromIterable(recommendations));
+    }
+
+    public Flux<RecommendationEntity> saveAll(Publisher<RecommendationEntity> recommendations) {
+        return repository.saveAll(recommendations)
+                .doOnNext(e -> invalidate(e.getProductId()));
     }
 
     public Mono<RecommendationEntity> findById(String id) {
         return repository.findById(id);
     }
 
+    public Flux<RecommendationEntity> findAllById(Iterable<String> ids) {
+        return repository.findAllById(ids);
+    }
+
     public Flux<RecommendationEntity> findByProductId(int productId) {
-        return repository.findByProductId(productId);
+        if (productCache == null) return repository.findByProductId(productId);
+
+        // Each subscriber gets its own copies, so callers can neither modify cached entities nor cancel a shared load
+        return Mono.fromFuture(() -> productCache
+                        .get(productId, (id, executor) -> repository.findByProductIdOnPrimary(id).collectList().toFuture())
+                        .thenApply(RecommendationRepoService::copyOf))
+                .flatMapIterable(entities -> entities);
     }
 
-    public Mono<Void> deleteByProductId(int productId) {
-        return repository.deleteByProductId(productId);
+    public Mono<Long> deleteByProductId(int productId) {
+        return repository.deleteByProductId(productId)
+                .doFinally(s -> invalidate(productId));
     }
 
     public Mono<Void> delete(RecommendationEntity entity) {
-        return repository.delete(entity);
+        return repository.delete(entity)
+                .doFinally(s -> invalidate(entity.getProductId()));
+    }
+
+    public Mono<Void> deleteAll(Iterable<RecommendationEntity> entities) {
+        return repository.deleteAll(entities)
+                .doFinally(s -> entities.forEach(e -> invalidate(e.getProductId())));
     }
 
     public Mono<Void> deleteAll() {
-        return repository.deleteAll();
+        return repository.deleteAll()
+                .doFinally(s -> invalidate(RecommendationRepoImpl.ALL_PRODUCTS));
+    }
+
+    public Flux<RecommendationEntity> findAll() {
+        return repository.findAll();
     }
 
     public Mono<Long> count() {
@@ -57,4 +152,31 @@ public class RecommendationRepoService {
         return repository.findByRecommendationId(recommendationId);
     }
 
+    private void invalidate(int productId) {
+        if (productCache != null) productCache.synchronous().invalidate(productId);
+    }
+
+    private void invalidate(String productId) {
+        if (productCache == null) return;
+
+        if (RecommendationRepoImpl.ALL_PRODUCTS.equals(productId)) {
+            productCache.synchronous().invalidateAll();
+        } else {
+            try {
+                invalidate(Integer.parseInt(productId));
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignores recommendation change notification for productId: {}", productId);
+            }
+        }
+    }
+
+    private static List<RecommendationEntity> copyOf(List<RecommendationEntity> entities) {
+        return entities.stream().map(e -> {
+            RecommendationEntity copy = new RecommendationEntity(
+                    e.getProductId(), e.getRecommendationId(), e.getAuthor(), e.getRating(), e.getContent());
+            copy.setId(e.getId());
+            copy.setVersion(e.getVersion());
+            return copy;
+        }).collect(Collectors.toList());
+    }
 }
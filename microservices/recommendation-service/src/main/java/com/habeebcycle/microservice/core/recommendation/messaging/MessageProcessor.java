@@ -4,8 +4,12 @@ import com.habeebcycle.microservice.core.recommendation.controller.Recommendatio
 import com.habeebcycle.microservice.library.api.core.recommendation.Recommendation;
 import com.habeebcycle.microservice.library.api.event.DataEvent;
 import com.habeebcycle.microservice.library.util.exceptions.EventProcessingException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
@@ -17,10 +21,15 @@ public class MessageProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(MessageProcessor.class);
 
     private final RecommendationController controller;
+    private final DistributionSummary deletedRecommendations;
 
     @Autowired
-    public MessageProcessor(RecommendationController controller) {
+    public MessageProcessor(RecommendationController controller, ObjectProvider<MeterRegistry> meterRegistry) {
         this.controller = controller;
+        this.deletedRecommendations = DistributionSummary.builder("recommendation.events.deleted")
+                .description("Recommendations removed per DELETE event")
+                .baseUnit("recommendations")
+                .register(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
     }
 
     @StreamListener(Sink.INPUT)
@@ -39,7 +48,9 @@ public class MessageProcessor {
             case DELETE:
                 int productId = event.getKey();
                 LOG.info("Delete recommendations with ProductId: {}", productId);
-                controller.deleteRecommendations(productId);
+                long deleted = controller.deleteRecommendationsByProductId(productId);
+                deletedRecommendations.record(deleted);
+                LOG.info("Deleted {} recommendations with ProductId: {}", deleted, productId);
                 break;
 
             default:
@@ -0,0 +1,113 @@
+package com.habeebcycle.microservice.core.recommendation.persistence;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Hash value serializer for {@link RecommendationEntity}.
+ *
+ * Writes either the legacy JSON (with class type hints) or Smile binary JSON, which drops the type hints
+ * and encodes field names and numbers compactly. Smile values of at least compressionThreshold bytes are
+ * LZ4 compressed, which mostly pays off for long content.
+ *
+ * Reading detects the format from the first byte, so both formats can be read whatever is being written:
+ * '{' is legacy JSON, ':' is the Smile header and 'Z' marks an LZ4 block holding a Smile value.
+ */
+public class RecommendationEntitySerializer implements RedisSerializer<RecommendationEntity> {
+
+    public enum Format { JSON, SMILE }
+
+    private static final byte JSON_MARKER = '{';
+    private static final byte SMILE_MARKER = ':';
+    private static final byte LZ4_MARKER = 'Z';
+    private static final int LZ4_HEADER_LENGTH = 5;
+
+    private final Format format;
+    private final int compressionThreshold;
+
+    private final GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer();
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    /**
+     * @param format - the format new values are written in
+     * @param compressionThreshold - Smile values of at least this many bytes are compressed, 0 disables compression
+     */
+    public RecommendationEntitySerializer(Format format, int compressionThreshold) {
+        this.format = format;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public byte[] serialize(RecommendationEntity entity) throws SerializationException {
+        if (entity == null) return new byte[0];
+
+        if (format == Format.JSON) return jsonSerializer.serialize(entity);
+
+        byte[] smile = writeSmile(entity);
+        if (compressionThreshold > 0 && smile.length >= compressionThreshold) {
+            return compress(smile);
+        }
+        return smile;
+    }
+
+    @Override
+    public RecommendationEntity deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) return null;
+
+        switch (bytes[0]) {
+            case JSON_MARKER:
+                return (RecommendationEntity) jsonSerializer.deserialize(bytes);
+            case SMILE_MARKER:
+                return readSmile(bytes);
+            case LZ4_MARKER:
+                return readSmile(decompress(bytes));
+            default:
+                throw new SerializationException("Unknown recommendation value format: " + bytes[0]);
+        }
+    }
+
+    private byte[] writeSmile(RecommendationEntity entity) {
+        try {
+            return smileMapper.writeValueAsBytes(entity);
+        } catch (IOException e) {
+            throw new SerializationException("Could not write Smile: " + e.getMessage(), e);
+        }
+    }
+
+    private RecommendationEntity readSmile(byte[] bytes) {
+        try {
+            return smileMapper.readValue(bytes, RecommendationEntity.class);
+        } catch (IOException e) {
+            throw new SerializationException("Could not read Smile: " + e.getMessage(), e);
+        }
+    }
+
+    // [Z][original length][LZ4 block], kept uncompressed if LZ4 does not make it smaller
+    private byte[] compress(byte[] smile) {
+        byte[] compressed = new byte[LZ4_HEADER_LENGTH + compressor.maxCompressedLength(smile.length)];
+        int length = compressor.compress(smile, 0, smile.length, compressed, LZ4_HEADER_LENGTH);
+        if (LZ4_HEADER_LENGTH + length >= smile.length) return smile;
+
+        ByteBuffer.wrap(compressed).put(LZ4_MARKER).putInt(smile.length);
+        return Arrays.copyOf(compressed, LZ4_HEADER_LENGTH + length);
+    }
+
+    private byte[] decompress(byte[] bytes) {
+        int originalLength = ByteBuffer.wrap(bytes, 1, 4).getInt();
+        return decompressor.decompress(bytes, LZ4_HEADER_LENGTH, originalLength);
+    }
+}
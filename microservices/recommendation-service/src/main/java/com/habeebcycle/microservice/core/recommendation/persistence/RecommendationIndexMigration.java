@@ -0,0 +1,112 @@
+package com.habeebcycle.microservice.core.recommendation.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.stream.endpoint.BindingsLifecycleController;
+import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Brings the secondary indexes up to date in the background once the application is ready, instead of holding up
+ * the startup of every instance with a walk of the whole store. A pass only walks the store if it is not at the
+ * current index version yet, or if app.redis.index-migration.force is set. Until the first pass is done the health
+ * of the migration is OUT_OF_SERVICE, and as part of the readiness group it keeps the requests away.
+ *
+ * The message bindings do not look at the readiness, so the input binding is configured with autoStartup: false
+ * and only started here once the first pass is done. A DELETE event handled earlier would miss the entities that
+ * are not indexed yet, which the pass would then index again, and a CREATE event would not see them as duplicates.
+ *
+ * Instances of a release without the indexes keep writing entities without index entries. While such instances
+ * are still running, e.g. during a rolling upgrade, app.redis.index-migration.repeat-every indexes the whole store
+ * again after each interval. Remove it once the rollout is done.
+ */
+@Component
+public class RecommendationIndexMigration implements ApplicationListener<ApplicationReadyEvent>, HealthIndicator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecommendationIndexMigration.class);
+
+    private final RecommendationRepoImpl repository;
+    private final ObjectProvider<BindingsLifecycleController> bindings;
+    private final boolean enabled;
+    private final boolean force;
+    private final Duration repeatEvery;
+
+    private volatile boolean migrated;
+    private volatile Throwable lastError;
+    private volatile Disposable migration;
+
+    @Autowired
+    public RecommendationIndexMigration(RecommendationRepoImpl repository,
+                                        ObjectProvider<BindingsLifecycleController> bindings,
+                                        @Value("${app.redis.index-migration.enabled:true}") boolean enabled,
+                                        @Value("${app.redis.index-migration.force:false}") boolean force,
+                                        @Value("${app.redis.index-migration.repeat-every:0s}") Duration repeatEvery) {
+        this.repository = repository;
+        this.bindings = bindings;
+        this.enabled = enabled;
+        this.force = force;
+        this.repeatEvery = repeatEvery;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!enabled) {
+            migrated();
+            return;
+        }
+
+        boolean repeating = !repeatEvery.isZero();
+        // A failed pass is tried again, the indexing is idempotent
+        Mono<Long> pass = Mono.defer(() -> repository.migrateIndexes(force || repeating))
+                .doOnNext(indexed -> {
+                    lastError = null;
+                    LOG.info("Recommendation indexes are up to date, {} entities were indexed", indexed);
+                    migrated();
+                })
+                .doOnError(e -> {
+                    lastError = e;
+                    LOG.warn("Failed to migrate the recommendation indexes, tries again: {}", e.toString());
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofMinutes(1)));
+
+        Flux<Long> passes = repeating ? pass.repeatWhen(done -> done.delayElements(repeatEvery)) : pass.flux();
+        migration = passes.subscribe();
+    }
+
+    @Override
+    public Health health() {
+        if (migrated) return Health.up().build();
+
+        Health.Builder health = Health.outOfService();
+        if (lastError != null) health.withException(lastError);
+        return health.build();
+    }
+
+    // Only the first pass starts the input binding, the repeated ones run while the events are consumed
+    private void migrated() {
+        if (migrated) return;
+
+        LOG.info("Starts the {} binding, the recommendation indexes are migrated", Sink.INPUT);
+        bindings.ifAvailable(controller -> controller.changeState(Sink.INPUT, BindingsLifecycleController.State.STARTED));
+        migrated = true;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (migration != null) migration.dispose();
+    }
+}
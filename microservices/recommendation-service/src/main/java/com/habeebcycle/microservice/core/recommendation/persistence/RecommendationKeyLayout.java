@@ -0,0 +1,138 @@
+package com.habeebcycle.microservice.core.recommendation.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Maps recommendations to the Redis keys they are stored under.
+ *
+ * The single layout keeps every recommendation in one RECOMMENDATION hash next to its index keys.
+ * The sharded layout spreads recommendations over a fixed number of buckets by productId. All keys of a
+ * bucket share the hash tag {bucket}, so they live in the same Redis Cluster slot and the Lua scripts stay
+ * atomic within a bucket. The bucket is encoded in the entity id, so findById still needs a single lookup.
+ */
+public class RecommendationKeyLayout {
+
+    private static final char ID_SEPARATOR = '-';
+
+    private final List<Shard> shards;
+    private final String indexVersionKey;
+
+    private RecommendationKeyLayout(String prefix, List<Shard> shards) {
+        this.shards = shards;
+        this.indexVersionKey = prefix + ":INDEX_VERSION";
+    }
+
+    public static RecommendationKeyLayout single(String prefix) {
+        return new RecommendationKeyLayout(prefix, Collections.singletonList(new Shard(prefix)));
+    }
+
+    public static RecommendationKeyLayout sharded(String prefix, int buckets) {
+        if (buckets < 1) throw new IllegalArgumentException("Number of buckets must be positive: " + buckets);
+
+        List<Shard> shards = new ArrayList<>(buckets);
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            shards.add(new Shard(prefix + ":{" + bucket + "}"));
+        }
+        return new RecommendationKeyLayout(prefix, Collections.unmodifiableList(shards));
+    }
+
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    public List<Shard> shards() {
+        return shards;
+    }
+
+    /**
+     * @return the key holding the version of the secondary indexes the store was last migrated to
+     */
+    public String getIndexVersionKey() {
+        return indexVersionKey;
+    }
+
+    public Shard shardFor(int productId) {
+        return shards.get(bucketOf(productId));
+    }
+
+    /**
+     * @param id - the id of a stored recommendation
+     * @return the shard holding the recommendation, or null if the id cannot belong to this layout
+     */
+    public Shard shardForId(String id) {
+        if (!isSharded()) return shards.get(0);
+
+        int separator = id.indexOf(ID_SEPARATOR);
+        if (separator < 1) return null;
+        try {
+            int bucket = Integer.parseInt(id.substring(0, separator));
+            return bucket >= 0 && bucket < shards.size() ? shards.get(bucket) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public String newId(int productId) {
+        String uuid = UUID.randomUUID().toString().replaceAll("-", "");
+        return isSharded() ? bucketOf(productId) + String.valueOf(ID_SEPARATOR) + uuid : uuid;
+    }
+
+    private int bucketOf(int productId) {
+        return Math.floorMod(productId, shards.size());
+    }
+
+    /**
+     * The keys of one shard, the scripts only ever touch these five keys:
+     * PREFIX                   - hash of entity id -> entity
+     * PREFIX:PRODUCT           - sorted set of "<productId>:<entity id>", read by productId with a lex range
+     * PREFIX:RECOMMENDATION_ID - sorted set of "<recommendationId>:<entity id>", read the same way
+     * PREFIX:UNIQUE            - hash of "<productId>:<recommendationId>" -> entity id
+     * PREFIX:META              - hash of entity id -> "<version>:<productId>:<recommendationId>"
+     */
+    public static class Shard {
+
+        private final String entityKey;
+        private final String productIndexKey;
+        private final String recommendationIndexKey;
+        private final String uniqueIndexKey;
+        private final String metaKey;
+
+        private Shard(String prefix) {
+            this.entityKey = prefix;
+            this.productIndexKey = prefix + ":PRODUCT";
+            this.recommendationIndexKey = prefix + ":RECOMMENDATION_ID";
+            this.uniqueIndexKey = prefix + ":UNIQUE";
+            this.metaKey = prefix + ":META";
+        }
+
+        public String getEntityKey() {
+            return entityKey;
+        }
+
+        public String getProductIndexKey() {
+            return productIndexKey;
+        }
+
+        public String getRecommendationIndexKey() {
+            return recommendationIndexKey;
+        }
+
+        public String getUniqueIndexKey() {
+            return uniqueIndexKey;
+        }
+
+        public String getMetaKey() {
+            return metaKey;
+        }
+
+        /**
+         * @return the keys of the shard in the order the scripts expect them
+         */
+        public List<String> keys() {
+            return List.of(entityKey, uniqueIndexKey, metaKey, productIndexKey, recommendationIndexKey);
+        }
+    }
+}
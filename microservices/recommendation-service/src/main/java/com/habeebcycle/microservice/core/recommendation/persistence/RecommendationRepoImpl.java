@@ -2,34 +2,126 @@ package com.habeebcycle.microservice.core.recommendation.persistence;
 
 import org.reactivestreams.Publisher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Range;
 import org.springframework.data.redis.core.ReactiveHashOperations;
 import org.springframework.data.redis.core.ReactiveRedisOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.UUID;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 @Repository
 public class RecommendationRepoImpl implements RecommendationRepository{
 
-    private final static String KEY = "RECOMMENDATION";
+    public final static String KEY = "RECOMMENDATION";
+
+    /*
+        Secondary indexes are kept next to the entity hash of each shard so that reads only touch the matching
+        entries, see RecommendationKeyLayout.Shard for the keys. The index sorted sets hold "<value>:<entity id>"
+        members with the same score, so the ids of one productId or recommendationId are a lex range.
+
+        The META hash lets the save/delete scripts check versions and move index entries without having to
+        decode the stored entity.
+     */
+
+    /**
+     * Every write publishes the affected productId on this channel from inside its script,
+     * deleteAll publishes ALL_PRODUCTS.
+     */
+    public final static String CHANGES_CHANNEL = KEY + ":CHANGES";
+    public final static String ALL_PRODUCTS = "*";
+
+    private final static RedisScript<String> INSERT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/recommendation-insert.lua"), String.class);
+    private final static RedisScript<String> UPDATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/recommendation-update.lua"), String.class);
+    private final static RedisScript<Long> DELETE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/recommendation-delete.lua"), Long.class);
+    private final static RedisScript<Long> DELETE_PRODUCT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/recommendation-delete-product.lua"), Long.class);
+    private final static RedisScript<Long> DELETE_SHARD_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/recommendation-delete-shard.lua"), Long.class);
+    private final static RedisScript<String> INDEX_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/recommendation-index.lua"), String.class);
+
+    // Bumped whenever the index keys change, stores migrated to an older version are indexed again at startup
+    private final static String INDEX_VERSION = "1";
+
+    private final static String SCRIPT_OK = "OK";
+    private final static String SCRIPT_INDEXED = "INDEXED";
+    private final static String SCRIPT_CHANGED = "CHANGED";
+    private final static String SCRIPT_DUPLICATE = "DUPLICATE";
+    private final static String SCRIPT_NOT_FOUND = "NOT_FOUND";
+
+    private final static RedisElementWriter<ByteBuffer> SCRIPT_ARGS_WRITER = SerializationPair.byteBuffer().getWriter();
+    private final static RedisElementReader<String> SCRIPT_RESULT_READER = RedisElementReader.from(StringRedisSerializer.UTF_8);
+    private final static RedisElementReader<Long> SCRIPT_COUNT_READER =
+            RedisElementReader.from(new GenericToStringSerializer<>(Long.class));
 
     private final ReactiveRedisOperations<String, RecommendationEntity> redisOperations;
     private final ReactiveHashOperations<String, String, RecommendationEntity> hashOperations;
+    private final ReactiveHashOperations<String, String, RecommendationEntity> primaryHashOperations;
+    private final ReactiveStringRedisTemplate indexOperations;
+    private final ReactiveZSetOperations<String, String> indexReadZSetOperations;
+    private final ReactiveZSetOperations<String, String> primaryIndexZSetOperations;
+    private final ReactiveHashOperations<String, String, String> indexReadHashOperations;
+    private final RecommendationKeyLayout layout;
+    private final int batchSize;
+    private final ScanOptions scanOptions;
 
     @Autowired
-    public RecommendationRepoImpl(ReactiveRedisOperations<String, RecommendationEntity> redisOperations) {
+    public RecommendationRepoImpl(ReactiveRedisOperations<String, RecommendationEntity> redisOperations,
+                                  @Qualifier("readOperations")
+                                          ReactiveRedisOperations<String, RecommendationEntity> readOperations,
+                                  ReactiveStringRedisTemplate indexOperations,
+                                  @Qualifier("indexReadOperations") ReactiveStringRedisTemplate indexReadOperations,
+                                  RecommendationKeyLayout layout,
+                                  @Value("${app.redis.batch-size:256}") int batchSize,
+                                  @Value("${app.redis.scan-page-size:500}") int scanPageSize) {
         this.redisOperations = redisOperations;
-        this.hashOperations = redisOperations.opsForHash();
+        // Entity hashes are only written through scripts, every other access is a read and may go to a replica
+        this.hashOperations = readOperations.opsForHash();
+        this.primaryHashOperations = redisOperations.opsForHash();
+        this.indexOperations = indexOperations;
+        this.indexReadZSetOperations = indexReadOperations.opsForZSet();
+        this.primaryIndexZSetOperations = indexOperations.opsForZSet();
+        this.indexReadHashOperations = indexReadOperations.opsForHash();
+        this.layout = layout;
+        this.batchSize = batchSize;
+        this.scanOptions = ScanOptions.scanOptions().count(scanPageSize).build();
     }
 
     @Override
     public Mono<RecommendationEntity> findById(String id) {
-        return hashOperations.get(KEY, id);
+        RecommendationKeyLayout.Shard shard = layout.shardForId(id);
+        return shard == null ? Mono.empty() : hashOperations.get(shard.getEntityKey(), id);
     }
 
     @Override
@@ -47,148 +139,359 @@ public class RecommendationRepoImpl implements RecommendationRepository{
                 MongoDB Document class:
                 @Document(collection="recommendations")
                 @CompoundIndex(name = "prod-rec-id", unique = true, def = "{'productId': 1, 'recommendationId' : 1}")
+
+                The uniqueness check, the write and the index updates all run in one Lua script.
              */
-            return findByProductIdAndRecommendationId(entity.getProductId(), entity.getRecommendationId())
-                    .flatMap(e -> Mono.error(new DuplicateKeyException("Duplicate key, Product Id: "
-                            + entity.getProductId() + ", Recommendation Id: " + entity.getRecommendationId())))
-                    .switchIfEmpty(Mono.defer(() -> addNewEntity(entity)))
-                    .thenReturn(entity);
+            return addNewEntity(entity);
         } else {
-            return findById(entity.getId())
-                    .flatMap(e -> {
-                        if(!e.getVersion().equals(entity.getVersion())) {
-                            return Mono.error(
-                                    new OptimisticLockingFailureException(
-                                            "This data has been updated earlier by another object."));
-                        } else {
-                            entity.setVersion(entity.getVersion() + 1);
-                            return hashOperations.put(KEY, entity.getId(), entity)
-                                    .map(isSaved -> entity);
-                        }
-
-                    })
+            return updateEntity(entity)
                     .switchIfEmpty(Mono.defer(() -> addNewEntity(entity)));
-                    //.thenReturn(entity);
         }
     }
 
     @Override
     public Flux<RecommendationEntity> findByProductId(int productId) {
-        return hashOperations.values(KEY)
-                .filter(r -> r.getProductId() == productId)
+        RecommendationKeyLayout.Shard shard = layout.shardFor(productId);
+        return findIndexed(shard, shard.getProductIndexKey(), productId, indexReadZSetOperations, hashOperations)
+                .sort(Comparator.comparingInt(RecommendationEntity::getRecommendationId));
+    }
+
+    /**
+     * Like findByProductId, but always reads from the primary. A replica may not have the write yet whose
+     * change notification triggered the read, so this is what the near-cache loads its entries with.
+     */
+    public Flux<RecommendationEntity> findByProductIdOnPrimary(int productId) {
+        RecommendationKeyLayout.Shard shard = layout.shardFor(productId);
+        return findIndexed(shard, shard.getProductIndexKey(), productId, primaryIndexZSetOperations, primaryHashOperations)
                 .sort(Comparator.comparingInt(RecommendationEntity::getRecommendationId));
     }
 
+    /**
+     * Recommendations are sharded by productId, so a recommendationId can be in any shard. With the sharded
+     * layout this sends one lex range query to each of the app.redis.shard-buckets shards, at most batchSize
+     * at a time, so it costs about shard-buckets round trips and is not meant for request paths.
+     */
     @Override
     public Flux<RecommendationEntity> findByRecommendationId(int recommendationId) {
-        return hashOperations.values(KEY)
-                .filter(r -> r.getRecommendationId() == recommendationId)
+        return Flux.fromIterable(layout.shards())
+                .flatMap(shard -> findIndexed(shard, shard.getRecommendationIndexKey(), recommendationId,
+                        indexReadZSetOperations, hashOperations), batchSize)
                 .sort(Comparator.comparingInt(RecommendationEntity::getRecommendationId));
-                //.sort(Comparator.comparing(RecommendationEntity::getRecommendationId));
     }
 
     @Override
     public Mono<RecommendationEntity> findByProductIdAndRecommendationId(int productId, int recommendationId) {
-        return hashOperations.values(KEY)
-                .filter(r -> r.getProductId() == productId && r.getRecommendationId() == recommendationId)
-                .singleOrEmpty();
+        return indexReadHashOperations.get(layout.shardFor(productId).getUniqueIndexKey(),
+                        uniqueIndexField(productId, recommendationId))
+                .flatMap(this::findById);
     }
 
     @Override
     public Mono<Void> deleteById(String id) {
-        return hashOperations.remove(KEY, id).then();
+        return removeEntity(id).then();
     }
 
     @Override
     public Mono<Void> delete(RecommendationEntity entity) {
-        return hashOperations.remove(KEY, entity.getId()).then();
+        return deleteById(entity.getId());
     }
 
     @Override
-    public Mono<Void> deleteByProductId(int productId) {
-        return hashOperations.values(KEY)
-                .filter(r -> r.getProductId() == productId)
-                .flatMap(r -> hashOperations.remove(KEY, r.getId()))
-                .then();
+    public Mono<Long> deleteByProductId(int productId) {
+        // One atomic script walks the product index, so the cost is proportional to the product's recommendations
+        RecommendationKeyLayout.Shard shard = layout.shardFor(productId);
+        List<ByteBuffer> args = Arrays.asList(scriptArg(String.valueOf(productId)), scriptArg(CHANGES_CHANNEL));
+
+        return redisOperations.execute(DELETE_PRODUCT_SCRIPT, shard.keys(), args, SCRIPT_ARGS_WRITER,
+                        SCRIPT_COUNT_READER)
+                .next();
     }
 
     @Override
     public Mono<Void> deleteAll() {
-        return hashOperations.delete(KEY).then();
+        return Flux.fromIterable(layout.shards())
+                .flatMap(shard -> redisOperations.execute(DELETE_SHARD_SCRIPT, shard.keys(),
+                        Collections.emptyList(), SCRIPT_ARGS_WRITER, SCRIPT_COUNT_READER), batchSize)
+                .then(indexOperations.convertAndSend(CHANGES_CHANNEL, ALL_PRODUCTS))
+                .then();
     }
 
     @Override
     public Mono<Long> count() {
-        return hashOperations.values(KEY).count();
+        return Flux.fromIterable(layout.shards())
+                .flatMap(shard -> hashOperations.size(shard.getEntityKey()), batchSize)
+                .reduce(0L, Long::sum);
     }
 
     @Override
     public Mono<Boolean> existsById(String id) {
-        return hashOperations.hasKey(KEY, id);
+        RecommendationKeyLayout.Shard shard = layout.shardForId(id);
+        return shard == null ? Mono.just(false) : hashOperations.hasKey(shard.getEntityKey(), id);
     }
 
+    /**
+     * Walks the whole store with HSCAN, one page of about app.redis.scan-page-size entries per request,
+     * fetching the next page only when the subscriber asks for more. Like any SCAN, an entity can be
+     * emitted more than once if the hash is resized during the walk. The shards are walked one after another.
+     * @return all stored recommendations
+     */
     @Override
     public Flux<RecommendationEntity> findAll() {
-        return hashOperations.values(KEY);
+        return Flux.fromIterable(layout.shards())
+                .concatMap(this::findAll);
+    }
+
+    /**
+     * Brings the secondary indexes and the META hash up to INDEX_VERSION, unless the store is already there.
+     * @param force - rebuild the indexes even if the store is at INDEX_VERSION
+     * @return the number of entities that had no index entries
+     */
+    public Mono<Long> migrateIndexes(boolean force) {
+        return indexOperations.opsForValue().get(layout.getIndexVersionKey())
+                .defaultIfEmpty("")
+                .flatMap(version -> !force && INDEX_VERSION.equals(version)
+                        ? Mono.just(0L)
+                        : rebuildIndexes().flatMap(indexed -> indexOperations.opsForValue()
+                                .set(layout.getIndexVersionKey(), INDEX_VERSION)
+                                .thenReturn(indexed)));
+    }
+
+    /**
+     * Indexes the entities stored before the secondary indexes existed. Each entity is indexed by a script
+     * that first checks it is still stored as read, so an entity deleted or rewritten during the walk never
+     * gets its index entries back, and META is only written for entities that have none. Re-indexing an
+     * entity is a no-op, so this is safe to repeat and to run next to live writes.
+     * @return the number of entities that had no index entries
+     */
+    public Mono<Long> rebuildIndexes() {
+        // Raw values, the script compares them to the stored ones byte for byte
+        return Flux.fromIterable(layout.shards())
+                .concatMap(shard -> redisOperations.execute(connection -> connection.hashCommands()
+                                .hScan(scriptArg(shard.getEntityKey()), scanOptions))
+                        .flatMap(entry -> indexEntity(shard, entry.getKey(), entry.getValue()), batchSize))
+                .filter(SCRIPT_INDEXED::equals)
+                .count();
     }
 
-    public String createEntityId() {
-        return UUID.randomUUID().toString().replaceAll("-", "");
+    public String createEntityId(int productId) {
+        return layout.newId(productId);
+    }
+
+    private Flux<RecommendationEntity> findAll(RecommendationKeyLayout.Shard shard) {
+        return hashOperations.scan(shard.getEntityKey(), scanOptions)
+                .map(Map.Entry::getValue);
     }
 
     private Mono<RecommendationEntity> addNewEntity(RecommendationEntity entity) {
-        entity.setId(createEntityId());
-        entity.setVersion(0);
-        return hashOperations.put(KEY, entity.getId(), entity)
-                .map(isSaved -> entity);
+        return Mono.defer(() -> {
+            RecommendationKeyLayout.Shard shard = layout.shardFor(entity.getProductId());
+            entity.setId(createEntityId(entity.getProductId()));
+            entity.setVersion(0);
+
+            List<ByteBuffer> args = entityArgs(entity, serialize(entity), CHANGES_CHANNEL);
+
+            return executeScript(INSERT_SCRIPT, shard.keys(), args)
+                    .flatMap(result -> {
+                        if (SCRIPT_DUPLICATE.equals(result)) {
+                            entity.setId(null);
+                            entity.setVersion(null);
+                            return Mono.error(duplicateKey(entity));
+                        }
+                        return Mono.just(entity);
+                    });
+        });
+    }
+
+    // Emits the updated entity, or completes empty if no entity with the given id exists
+    private Mono<RecommendationEntity> updateEntity(RecommendationEntity entity) {
+        return Mono.defer(() -> {
+            RecommendationKeyLayout.Shard shard = layout.shardForId(entity.getId());
+            if (shard == null) return Mono.empty();
+            if (shard != layout.shardFor(entity.getProductId())) {
+                return Mono.error(new InvalidDataAccessApiUsageException("The productId of recommendation "
+                        + entity.getId() + " cannot be moved to another shard, delete and create it instead."));
+            }
+
+            Integer expectedVersion = entity.getVersion();
+            entity.setVersion(expectedVersion == null ? 0 : expectedVersion + 1);
+
+            List<ByteBuffer> args = entityArgs(entity, serialize(entity), CHANGES_CHANNEL);
+            args.add(scriptArg(expectedVersion == null ? "" : expectedVersion.toString()));
+
+            return executeScript(UPDATE_SCRIPT, shard.keys(), args)
+                    .flatMap(result -> {
+                        if (SCRIPT_OK.equals(result)) return Mono.just(entity);
+
+                        entity.setVersion(expectedVersion);
+                        if (SCRIPT_NOT_FOUND.equals(result)) return Mono.empty();
+                        if (SCRIPT_DUPLICATE.equals(result)) return Mono.error(duplicateKey(entity));
+                        return Mono.error(new OptimisticLockingFailureException(
+                                "This data has been updated earlier by another object."));
+                    });
+        });
+    }
+
+    // Emits the script result, or completes empty if the entity was deleted in the meantime
+    private Mono<String> indexEntity(RecommendationKeyLayout.Shard shard, ByteBuffer id, ByteBuffer value) {
+        RecommendationEntity entity = redisOperations.getSerializationContext()
+                .<RecommendationEntity>getHashValueSerializationPair().read(value.duplicate());
+
+        // Indexed under the id as stored
+        entity.setId(StandardCharsets.UTF_8.decode(id.duplicate()).toString());
+        List<ByteBuffer> args = entityArgs(entity, value.duplicate(), null);
+
+        return executeScript(INDEX_SCRIPT, shard.keys(), args)
+                .flatMap(result -> SCRIPT_CHANGED.equals(result)
+                        ? redisOperations.execute(connection -> connection.hashCommands()
+                                        .hGet(scriptArg(shard.getEntityKey()), id.duplicate()))
+                                .next()
+                                .flatMap(current -> indexEntity(shard, id, current))
+                        : Mono.just(result));
+    }
+
+    private Mono<Long> removeEntity(String id) {
+        RecommendationKeyLayout.Shard shard = layout.shardForId(id);
+        if (shard == null) return Mono.just(0L);
+
+        List<ByteBuffer> args = Arrays.asList(scriptArg(id), scriptArg(CHANGES_CHANNEL));
+
+        return redisOperations.execute(DELETE_SCRIPT, shard.keys(), args, SCRIPT_ARGS_WRITER, SCRIPT_COUNT_READER)
+                .next();
+    }
+
+    private Mono<String> executeScript(RedisScript<String> script, List<String> keys, List<ByteBuffer> args) {
+        return redisOperations.execute(script, keys, args, SCRIPT_ARGS_WRITER, SCRIPT_RESULT_READER)
+                .next();
+    }
+
+    private Flux<RecommendationEntity> findAllByIds(Collection<String> ids) {
+        // One HMGET per shard, ids that cannot belong to any shard are not found
+        Map<RecommendationKeyLayout.Shard, List<String>> idsByShard = ids.stream()
+                .filter(id -> layout.shardForId(id) != null)
+                .collect(Collectors.groupingBy(layout::shardForId, LinkedHashMap::new, Collectors.toList()));
+
+        return Flux.fromIterable(idsByShard.entrySet())
+                .concatMap(e -> findAllByIds(e.getKey(), e.getValue()));
+    }
+
+    // The ids are the members "<value>:<entity id>" of the lex range of the value
+    private Flux<RecommendationEntity> findIndexed(RecommendationKeyLayout.Shard shard, String indexKey, int value,
+                                                   ReactiveZSetOperations<String, String> indexZSetOperations,
+                                                   ReactiveHashOperations<String, String, RecommendationEntity> entityOperations) {
+        String prefix = value + ":";
+        return indexZSetOperations.rangeByLex(indexKey, Range.of(Range.Bound.inclusive(prefix),
+                        Range.Bound.exclusive(value + ";")))
+                .map(member -> member.substring(prefix.length()))
+                .collectList()
+                .flatMapMany(ids -> findAllByIds(shard, ids, entityOperations));
+    }
+
+    private Flux<RecommendationEntity> findAllByIds(RecommendationKeyLayout.Shard shard, Collection<String> ids) {
+        return findAllByIds(shard, ids, hashOperations);
+    }
+
+    private Flux<RecommendationEntity> findAllByIds(RecommendationKeyLayout.Shard shard, Collection<String> ids,
+                                                    ReactiveHashOperations<String, String, RecommendationEntity> entityOperations) {
+        if (ids.isEmpty()) return Flux.empty();
+
+        // One HMGET for the whole result, ids left behind by a concurrent delete come back as null
+        return entityOperations.multiGet(shard.getEntityKey(), ids)
+                .flatMapIterable(entities -> entities.stream()
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList()));
+    }
+
+    private ByteBuffer serialize(RecommendationEntity entity) {
+        return redisOperations.getSerializationContext().getHashValueSerializationPair().write(entity);
+    }
+
+    private static ByteBuffer scriptArg(String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String metaValue(RecommendationEntity entity) {
+        return entity.getVersion() + ":" + entity.getProductId() + ":" + entity.getRecommendationId();
+    }
+
+    private static DuplicateKeyException duplicateKey(RecommendationEntity entity) {
+        return new DuplicateKeyException("Duplicate key, Product Id: "
+                + entity.getProductId() + ", Recommendation Id: " + entity.getRecommendationId());
+    }
+
+    // The arguments the insert, update and index scripts share, a null channel is left out
+    private static List<ByteBuffer> entityArgs(RecommendationEntity entity, ByteBuffer value, String channel) {
+        List<ByteBuffer> args = new ArrayList<>(Arrays.asList(
+                scriptArg(entity.getId()),
+                scriptArg(String.valueOf(entity.getProductId())),
+                scriptArg(String.valueOf(entity.getRecommendationId())),
+                value,
+                scriptArg(metaValue(entity))));
+        if (channel != null) args.add(scriptArg(channel));
+        return args;
+    }
+
+    private static String uniqueIndexField(int productId, int recommendationId) {
+        return productId + ":" + recommendationId;
     }
 
 
     //Others
 
+    /*
+        The batch methods keep at most batchSize commands in flight. Lettuce writes concurrent commands on the
+        shared connection without waiting for replies, so each batch is pipelined, and the incoming publisher is
+        only requested as fast as Redis acknowledges the writes.
+     */
 
     @Override
     public <S extends RecommendationEntity> Flux<S> saveAll(Iterable<S> iterable) {
-        return null;
+        return saveAll(Flux.fromIterable(iterable));
     }
 
     @Override
     public <S extends RecommendationEntity> Flux<S> saveAll(Publisher<S> publisher) {
-        return null;
+        return Flux.from(publisher)
+                .flatMapSequential(entity -> save(entity).thenReturn(entity), batchSize);
     }
 
     @Override
     public Mono<RecommendationEntity> findById(Publisher<String> publisher) {
-        return null;
+        return Mono.from(publisher).flatMap(this::findById);
     }
 
     @Override
     public Mono<Boolean> existsById(Publisher<String> publisher) {
-        return null;
+        return Mono.from(publisher).flatMap(this::existsById);
     }
 
     @Override
     public Flux<RecommendationEntity> findAllById(Iterable<String> iterable) {
-        return null;
+        return findAllById(Flux.fromIterable(iterable));
     }
 
     @Override
     public Flux<RecommendationEntity> findAllById(Publisher<String> publisher) {
-        return null;
+        // One HMGET per batch of ids
+        return Flux.from(publisher)
+                .buffer(batchSize)
+                .concatMap(this::findAllByIds);
     }
 
     @Override
     public Mono<Void> deleteById(Publisher<String> publisher) {
-        return null;
+        return Mono.from(publisher).flatMap(this::deleteById);
     }
 
     @Override
     public Mono<Void> deleteAll(Iterable<? extends RecommendationEntity> iterable) {
-        return null;
+        return deleteAll(Flux.fromIterable(iterable));
     }
 
     @Override
     public Mono<Void> deleteAll(Publisher<? extends RecommendationEntity> publisher) {
-        return null;
+        return Flux.from(publisher)
+                .map(RecommendationEntity::getId)
+                .flatMap(this::removeEntity, batchSize)
+                .then();
     }
 }
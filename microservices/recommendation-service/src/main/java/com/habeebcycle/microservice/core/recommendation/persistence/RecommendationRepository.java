@@ -13,5 +13,9 @@ public interface RecommendationRepository extends ReactiveCrudRepository<Recomme
 
     Mono<RecommendationEntity> findByProductIdAndRecommendationId(int productId, int recommendationId);
 
-    Mono<Void> deleteByProductId(int productId);
+    /**
+     * @param productId - the product whose recommendations are deleted
+     * @return the number of recommendations removed
+     */
+    Mono<Long> deleteByProductId(int productId);
 }
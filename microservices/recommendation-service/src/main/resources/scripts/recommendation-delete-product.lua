@@ -0,0 +1,26 @@
+-- Deletes all recommendations of a product together with their index entries.
+-- KEYS[1] entity hash, KEYS[2] unique index hash, KEYS[3] meta hash,
+-- KEYS[4] product index sorted set, KEYS[5] recommendationId index sorted set
+-- ARGV[1] productId, ARGV[2] change notification channel
+local prefix = ARGV[1] .. ':'
+local first, last = '[' .. prefix, '(' .. ARGV[1] .. ';'
+local removed = 0
+for _, member in ipairs(redis.call('ZRANGEBYLEX', KEYS[4], first, last)) do
+    local id = string.sub(member, #prefix + 1)
+    local meta = redis.call('HGET', KEYS[3], id)
+    if meta then
+        local _, productId, recommendationId = string.match(meta, '^(%-?%d+):(%-?%d+):(%-?%d+)$')
+        local unique = productId .. ':' .. recommendationId
+        if redis.call('HGET', KEYS[2], unique) == id then
+            redis.call('HDEL', KEYS[2], unique)
+        end
+        redis.call('ZREM', KEYS[5], recommendationId .. ':' .. id)
+        redis.call('HDEL', KEYS[3], id)
+    end
+    removed = removed + redis.call('HDEL', KEYS[1], id)
+end
+redis.call('ZREMRANGEBYLEX', KEYS[4], first, last)
+if removed > 0 then
+    redis.call('PUBLISH', ARGV[2], ARGV[1])
+end
+return removed
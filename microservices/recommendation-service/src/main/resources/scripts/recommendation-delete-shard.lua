@@ -0,0 +1,4 @@
+-- Deletes every recommendation of a shard together with its index keys.
+-- KEYS[1] entity hash, KEYS[2] unique index hash, KEYS[3] meta hash,
+-- KEYS[4] product index sorted set, KEYS[5] recommendationId index sorted set
+return redis.call('DEL', KEYS[1], KEYS[2], KEYS[3], KEYS[4], KEYS[5])
@@ -0,0 +1,19 @@
+-- Deletes a recommendation together with its index entries.
+-- KEYS[1] entity hash, KEYS[2] unique index hash, KEYS[3] meta hash,
+-- KEYS[4] product index sorted set, KEYS[5] recommendationId index sorted set
+-- ARGV[1] entity id, ARGV[2] change notification channel
+local meta = redis.call('HGET', KEYS[3], ARGV[1])
+if not meta then
+    return redis.call('HDEL', KEYS[1], ARGV[1])
+end
+
+local _, productId, recommendationId = string.match(meta, '^(%-?%d+):(%-?%d+):(%-?%d+)$')
+local unique = productId .. ':' .. recommendationId
+if redis.call('HGET', KEYS[2], unique) == ARGV[1] then
+    redis.call('HDEL', KEYS[2], unique)
+end
+redis.call('ZREM', KEYS[4], productId .. ':' .. ARGV[1])
+redis.call('ZREM', KEYS[5], recommendationId .. ':' .. ARGV[1])
+redis.call('HDEL', KEYS[3], ARGV[1])
+redis.call('PUBLISH', ARGV[2], productId)
+return redis.call('HDEL', KEYS[1], ARGV[1])
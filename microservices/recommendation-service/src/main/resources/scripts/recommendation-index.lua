@@ -0,0 +1,18 @@
+-- Indexes a recommendation stored before the secondary indexes existed.
+-- KEYS[1] entity hash, KEYS[2] unique index hash, KEYS[3] meta hash,
+-- KEYS[4] product index sorted set, KEYS[5] recommendationId index sorted set
+-- ARGV[1] entity id, ARGV[2] productId, ARGV[3] recommendationId, ARGV[4] serialized entity as read by the caller,
+-- ARGV[5] meta "<version>:<productId>:<recommendationId>"
+if redis.call('HGET', KEYS[1], ARGV[1]) ~= ARGV[4] then
+    -- Deleted or rewritten since the caller read it
+    return 'CHANGED'
+end
+
+local indexed = 'OK'
+if redis.call('HSETNX', KEYS[3], ARGV[1], ARGV[5]) == 1 then
+    indexed = 'INDEXED'
+end
+redis.call('ZADD', KEYS[4], 0, ARGV[2] .. ':' .. ARGV[1])
+redis.call('ZADD', KEYS[5], 0, ARGV[3] .. ':' .. ARGV[1])
+redis.call('HSETNX', KEYS[2], ARGV[2] .. ':' .. ARGV[3], ARGV[1])
+return indexed
@@ -0,0 +1,18 @@
+-- Inserts a new recommendation together with its index entries.
+-- KEYS[1] entity hash, KEYS[2] unique index hash, KEYS[3] meta hash,
+-- KEYS[4] product index sorted set, KEYS[5] recommendationId index sorted set
+-- ARGV[1] entity id, ARGV[2] productId, ARGV[3] recommendationId, ARGV[4] serialized entity,
+-- ARGV[5] meta "<version>:<productId>:<recommendationId>", ARGV[6] change notification channel
+local unique = ARGV[2] .. ':' .. ARGV[3]
+local owner = redis.call('HGET', KEYS[2], unique)
+if owner and owner ~= ARGV[1] then
+    return 'DUPLICATE'
+end
+
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[4])
+redis.call('HSET', KEYS[3], ARGV[1], ARGV[5])
+redis.call('HSET', KEYS[2], unique, ARGV[1])
+redis.call('ZADD', KEYS[4], 0, ARGV[2] .. ':' .. ARGV[1])
+redis.call('ZADD', KEYS[5], 0, ARGV[3] .. ':' .. ARGV[1])
+redis.call('PUBLISH', ARGV[6], ARGV[2])
+return 'OK'
@@ -0,0 +1,48 @@
+-- Updates an existing recommendation if the stored version matches, moving its index entries
+-- when productId or recommendationId changed.
+-- KEYS[1] entity hash, KEYS[2] unique index hash, KEYS[3] meta hash,
+-- KEYS[4] product index sorted set, KEYS[5] recommendationId index sorted set
+-- ARGV[1] entity id, ARGV[2] productId, ARGV[3] recommendationId, ARGV[4] serialized entity,
+-- ARGV[5] new meta "<version>:<productId>:<recommendationId>", ARGV[6] change notification channel,
+-- ARGV[7] expected version
+local meta = redis.call('HGET', KEYS[3], ARGV[1])
+local productId, recommendationId
+if meta then
+    local version
+    version, productId, recommendationId = string.match(meta, '^(%-?%d+):(%-?%d+):(%-?%d+)$')
+    if version ~= ARGV[7] then
+        return 'VERSION_MISMATCH'
+    end
+elseif redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then
+    return 'NOT_FOUND'
+end
+-- Without META the entity was stored before the indexes existed, it has no version to check and is indexed here
+
+if productId ~= ARGV[2] or recommendationId ~= ARGV[3] then
+    local newUnique = ARGV[2] .. ':' .. ARGV[3]
+    local owner = redis.call('HGET', KEYS[2], newUnique)
+    if owner and owner ~= ARGV[1] then
+        return 'DUPLICATE'
+    end
+
+    if meta then
+        local oldUnique = productId .. ':' .. recommendationId
+        if redis.call('HGET', KEYS[2], oldUnique) == ARGV[1] then
+            redis.call('HDEL', KEYS[2], oldUnique)
+        end
+        redis.call('ZREM', KEYS[4], productId .. ':' .. ARGV[1])
+        redis.call('ZREM', KEYS[5], recommendationId .. ':' .. ARGV[1])
+        if productId ~= ARGV[2] then
+            redis.call('PUBLISH', ARGV[6], productId)
+        end
+    end
+
+    redis.call('HSET', KEYS[2], newUnique, ARGV[1])
+    redis.call('ZADD', KEYS[4], 0, ARGV[2] .. ':' .. ARGV[1])
+    redis.call('ZADD', KEYS[5], 0, ARGV[3] .. ':' .. ARGV[1])
+end
+
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[4])
+redis.call('HSET', KEYS[3], ARGV[1], ARGV[5])
+redis.call('PUBLISH', ARGV[6], ARGV[2])
+return 'OK'
@@ -4,6 +4,7 @@ import com.habeebcycle.microservice.core.recommendation.controller.Recommendatio
 import com.habeebcycle.microservice.library.api.core.recommendation.Recommendation;
 import com.habeebcycle.microservice.library.api.event.DataEvent;
 import com.habeebcycle.microservice.library.util.exceptions.BadRequestException;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -36,6 +37,9 @@ class RecommendationServiceApplicationTests {
 	@Autowired
 	private Sink channels;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	private AbstractMessageChannel input = null;
 
 	private static RedisServer REDISSERVER = new RedisServer(6379);
@@ -76,6 +80,34 @@ class RecommendationServiceApplicationTests {
 				.jsonPath("$[2].recommendationId").isEqualTo(3);
 	}
 
+	@Test
+	void recommendationCacheMetricsTest() {
+
+		int productId = 1;
+
+		sendCreateRecommendationEvent(productId, 1);
+
+		getAndVerifyRecommendationsByProductId(productId, HttpStatus.OK);
+		getAndVerifyRecommendationsByProductId(productId, HttpStatus.OK);
+
+		assertTrue(meterRegistry.get("cache.gets").tag("cache", "recommendations").tag("result", "hit")
+				.functionCounter().count() > 0);
+		assertTrue(meterRegistry.get("cache.gets").tag("cache", "recommendations").tag("result", "miss")
+				.functionCounter().count() > 0);
+	}
+
+	@Test
+	void redisCommandLatencyMetricsTest() {
+
+		sendCreateRecommendationEvent(1, 1);
+		getAndVerifyRecommendationsByProductId(1, HttpStatus.OK);
+
+		assertTrue(meterRegistry.get("lettuce.command.completion").tag("command", "EVALSHA")
+				.timer().count() > 0);
+		assertTrue(meterRegistry.get("lettuce.command.firstresponse").tag("command", "ZRANGEBYLEX")
+				.timer().count() > 0);
+	}
+
 	@Test
 	void duplicateErrorTest() {
 
@@ -108,12 +140,16 @@ class RecommendationServiceApplicationTests {
 		int recommendationId = 1;
 
 		sendCreateRecommendationEvent(productId, recommendationId);
-		assertEquals(1, repository.findByProductId(productId).count().block());
+		sendCreateRecommendationEvent(productId, recommendationId + 1);
+		assertEquals(2, repository.findByProductId(productId).count().block());
+
+		double deletedBefore = meterRegistry.get("recommendation.events.deleted").summary().totalAmount();
 
 		sendDeleteRecommendationEvent(productId);
 		assertEquals(0, repository.findByProductId(productId).count().block());
 
 		sendDeleteRecommendationEvent(productId);
+		assertEquals(deletedBefore + 2, meterRegistry.get("recommendation.events.deleted").summary().totalAmount());
 	}
 
 	@Test
@@ -9,20 +9,32 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.redis.DataRedisTest;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.redis.core.ReactiveRedisOperations;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import redis.embedded.RedisServer;
 
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.jupiter.api.Assertions.*;
 
-@DataRedisTest(properties = {"spring.redis.password=", "spring.cloud.config.enabled=false"})
+@DataRedisTest(properties = {"spring.redis.password=", "spring.cloud.config.enabled=false",
+        "app.redis.index-migration.enabled=false"})
 public class PersistenceTests {
 
     @Autowired
     private RecommendationRepoService repository;
 
+    @Autowired
+    private RecommendationRepoImpl repositoryImpl;
+
+    @Autowired
+    private ReactiveRedisOperations<String, RecommendationEntity> redisOperations;
+
     private final static RedisServer REDISSERVER = new RedisServer(6379);
 
     private RecommendationEntity savedEntity;
@@ -99,6 +111,7 @@ public class PersistenceTests {
     void updateCreateTest() {
         savedEntity.setAuthor("CreatedFromUpdate");
         savedEntity.setId("wrongId");
+        savedEntity.setRecommendationId(3);
         repository.save(savedEntity).block();
 
         RecommendationEntity foundEntity = repository.findById(savedEntity.getId()).block();
@@ -153,6 +166,52 @@ public class PersistenceTests {
         assertEquals(3, repository.count().block());
     }
 
+    @Test
+    void getByProductIdAfterUpdateTest() {
+        savedEntity.setProductId(7);
+        repository.save(savedEntity).block();
+
+        assertEquals(0, repository.findByProductId(1).count().block());
+        assertEquals(1, repository.findByProductId(7).count().block());
+        assertNull(repository.findByProductIdAndRecommendationId(1, savedEntity.getRecommendationId()).block());
+        assertNotNull(repository.findByProductIdAndRecommendationId(7, savedEntity.getRecommendationId()).block());
+
+        // The old key is free again
+        repository.save(new RecommendationEntity(1, 2, "a", 3, "c")).block();
+        assertEquals(2, repository.count().block());
+    }
+
+    @Test
+    void deleteByProductIdTest() {
+        repository.save(new RecommendationEntity(1, 3, "a", 3, "c")).block();
+        repository.save(new RecommendationEntity(2, 2, "a", 3, "c")).block();
+
+        assertEquals(2, repository.deleteByProductId(savedEntity.getProductId()).block());
+        assertEquals(0, repository.deleteByProductId(savedEntity.getProductId()).block());
+
+        assertEquals(0, repository.findByProductId(savedEntity.getProductId()).count().block());
+        assertEquals(1, repository.findByRecommendationId(savedEntity.getRecommendationId()).count().block());
+        assertNull(repository.findByProductIdAndRecommendationId(1, 2).block());
+        assertEquals(1, repository.count().block());
+    }
+
+    @Test
+    void indexRangeBoundaryTest() {
+        // The index members of productId 12 must not pick up those of 1, 123 or -12
+        repository.save(new RecommendationEntity(12, 2, "a", 3, "c")).block();
+        repository.save(new RecommendationEntity(123, 2, "a", 3, "c")).block();
+        repository.save(new RecommendationEntity(-12, 2, "a", 3, "c")).block();
+
+        assertEquals(1, repositoryImpl.findByProductId(12).count().block());
+        assertEquals(1, repositoryImpl.findByProductId(1).count().block());
+        assertEquals(4, repositoryImpl.findByRecommendationId(2).count().block());
+
+        assertEquals(1, repositoryImpl.deleteByProductId(12).block());
+        assertEquals(1, repositoryImpl.findByProductId(123).count().block());
+        assertEquals(1, repositoryImpl.findByProductId(-12).count().block());
+        assertEquals(3, repositoryImpl.count().block());
+    }
+
     @Test
     void duplicateErrorTest() {
         RecommendationEntity entity = new RecommendationEntity(1, 2, "a", 3, "c");
@@ -161,6 +220,18 @@ public class PersistenceTests {
         assertEquals(1, repository.count().block());
     }
 
+    @Test
+    void updateCreateDuplicateErrorTest() {
+        RecommendationEntity entity = new RecommendationEntity(1, 2, "a", 3, "c");
+        entity.setId("wrongId");
+        assertThrows(DuplicateKeyException.class, () -> repository.save(entity).block());
+
+        assertEquals(1, repository.count().block());
+        RecommendationEntity foundEntity = repository.findByProductIdAndRecommendationId(1, 2).block();
+        assertNotNull(foundEntity);
+        assertEquals(savedEntity.getId(), foundEntity.getId());
+    }
+
     @Test
     void optimisticLockError() {
         // Store the saved entity in two separate entity objects
@@ -196,6 +267,159 @@ public class PersistenceTests {
         assertEquals(1, repository.count().block());
     }
 
+    @Test
+    void concurrentDuplicateErrorTest() {
+        List<RecommendationEntity> saved = Flux.range(0, 10)
+                .flatMap(i -> repository.save(new RecommendationEntity(9, 9, "a" + i, 3, "c"))
+                        .onErrorResume(DuplicateKeyException.class, e -> Mono.empty()))
+                .collectList().block();
+
+        assertThat(saved, hasSize(1));
+        assertEquals(1, repository.findByProductId(9).count().block());
+        assertEquals(2, repository.count().block());
+    }
+
+    @Test
+    void concurrentOptimisticLockErrorTest() {
+        List<RecommendationEntity> updated = Flux.range(0, 10)
+                .map(i -> repository.findById(savedEntity.getId()).block())
+                .collectList()
+                .flatMapMany(Flux::fromIterable)
+                .flatMap(e -> repository.save(e)
+                        .onErrorResume(OptimisticLockingFailureException.class, ex -> Mono.empty()))
+                .collectList().block();
+
+        assertThat(updated, hasSize(1));
+        assertEquals(1, (int) repository.findById(savedEntity.getId()).block().getVersion());
+    }
+
+    @Test
+    void saveAllTest() {
+        List<RecommendationEntity> entities = Flux.range(1, 1000)
+                .map(i -> new RecommendationEntity(100 + i % 10, i, "a", 3, "c"))
+                .collectList().block();
+
+        List<RecommendationEntity> saved = repository.saveAll(entities).collectList().block();
+
+        assertThat(saved, hasSize(1000));
+        assertEquals(1001, repository.count().block());
+        assertEquals(100, repository.findByProductId(105).count().block());
+
+        List<String> ids = saved.stream().map(RecommendationEntity::getId).collect(Collectors.toList());
+        assertEquals(1000, repository.findAllById(ids).count().block());
+
+        repository.deleteAll(saved).block();
+        assertEquals(1, repository.count().block());
+        assertEquals(0, repository.findByProductId(105).count().block());
+    }
+
+    @Test
+    void findAllTest() {
+        repository.saveAll(Flux.range(1, 2000).map(i -> new RecommendationEntity(200 + i % 10, i, "a", 3, "c")))
+                .blockLast();
+
+        assertEquals(2001, repository.count().block());
+
+        // Small requests make the scan fetch page by page
+        Set<String> ids = repository.findAll()
+                .limitRate(10)
+                .map(RecommendationEntity::getId)
+                .collect(Collectors.toSet()).block();
+
+        assertNotNull(ids);
+        assertEquals(2001, ids.size());
+        assertTrue(ids.contains(savedEntity.getId()));
+    }
+
+    @Test
+    void saveAllDuplicateErrorTest() {
+        List<RecommendationEntity> entities = List.of(
+                new RecommendationEntity(1, 3, "a", 3, "c"),
+                new RecommendationEntity(1, 2, "a", 3, "c"));
+
+        assertThrows(DuplicateKeyException.class, () -> repository.saveAll(entities).blockLast());
+        assertEquals(2, repository.count().block());
+    }
+
+    @Test
+    void findAllByIdMissingTest() {
+        List<RecommendationEntity> entityList =
+                repository.findAllById(List.of(savedEntity.getId(), "missingId")).collectList().block();
+
+        assertThat(entityList, hasSize(1));
+        assertEqualsRecommendation(savedEntity, entityList.get(0));
+    }
+
+    @Test
+    void nearCacheInvalidationTest() throws InterruptedException {
+        assertEquals(1, repository.findByProductId(savedEntity.getProductId()).count().block());
+
+        // A write handled by another instance reaches this one only through the change notification
+        repositoryImpl.save(new RecommendationEntity(1, 3, "a", 3, "c")).block();
+
+        long count = 0;
+        for (int i = 0; i < 50 && count != 2; i++) {
+            Thread.sleep(100);
+            count = repository.findByProductId(savedEntity.getProductId()).count().block();
+        }
+        assertEquals(2, count);
+    }
+
+    @Test
+    void nearCacheCopyTest() {
+        RecommendationEntity cached = repository.findByProductId(savedEntity.getProductId()).blockFirst();
+        assertNotNull(cached);
+        cached.setAuthor("changed");
+
+        assertEquals("a", repository.findByProductId(savedEntity.getProductId()).blockFirst().getAuthor());
+    }
+
+    @Test
+    void legacyEntityMigrationTest() {
+        RecommendationEntity legacy = storeLegacyEntity(new RecommendationEntity(4, 5, "a", 3, "c"));
+        assertEquals(0, repositoryImpl.findByProductId(4).count().block());
+
+        assertEquals(1, repositoryImpl.migrateIndexes(true).block());
+        assertEquals(0, repositoryImpl.migrateIndexes(true).block());
+
+        assertEqualsRecommendation(legacy, repositoryImpl.findByProductIdAndRecommendationId(4, 5).block());
+        assertEquals(1, repositoryImpl.findByProductId(4).count().block());
+        assertEquals(1, repositoryImpl.findByRecommendationId(5).count().block());
+        assertThrows(DuplicateKeyException.class,
+                () -> repositoryImpl.save(new RecommendationEntity(4, 5, "a", 3, "c")).block());
+
+        // Once the store is at the current index version only a forced rebuild walks it again
+        storeLegacyEntity(new RecommendationEntity(4, 6, "a", 3, "c"));
+        assertEquals(0, repositoryImpl.migrateIndexes(false).block());
+        assertEquals(1, repositoryImpl.findByProductId(4).count().block());
+    }
+
+    @Test
+    void legacyEntityUpdateTest() {
+        RecommendationEntity legacy = storeLegacyEntity(new RecommendationEntity(4, 5, "a", 3, "c"));
+        String id = legacy.getId();
+
+        legacy.setAuthor("a2");
+        RecommendationEntity updated = repositoryImpl.save(legacy).block();
+        assertNotNull(updated);
+        assertEquals(id, updated.getId());
+        assertEquals(1, (int) updated.getVersion());
+
+        // Updated in place and indexed, not inserted again
+        assertEquals(2, repositoryImpl.count().block());
+        assertEqualsRecommendation(updated, repositoryImpl.findByProductIdAndRecommendationId(4, 5).block());
+        assertEquals(1, repositoryImpl.findByProductId(4).count().block());
+        assertEquals(0, repositoryImpl.migrateIndexes(true).block());
+    }
+
+    // Writes an entity the way the releases before the secondary indexes did, without any index entries
+    private RecommendationEntity storeLegacyEntity(RecommendationEntity entity) {
+        entity.setId(repositoryImpl.createEntityId(entity.getProductId()));
+        entity.setVersion(0);
+        redisOperations.opsForHash().put(RecommendationRepoImpl.KEY, entity.getId(), entity).block();
+        return entity;
+    }
+
     private void assertEqualsRecommendation(RecommendationEntity expectedEntity, RecommendationEntity actualEntity) {
         assertEquals(expectedEntity.getId(),               actualEntity.getId());
         assertEquals(expectedEntity.getVersion(),          actualEntity.getVersion());
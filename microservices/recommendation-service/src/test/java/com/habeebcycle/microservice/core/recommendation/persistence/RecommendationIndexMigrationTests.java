@@ -0,0 +1,86 @@
+package com.habeebcycle.microservice.core.recommendation.persistence;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.cloud.stream.endpoint.BindingsLifecycleController;
+import org.springframework.cloud.stream.messaging.Sink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecommendationIndexMigrationTests {
+
+    private final RecommendationRepoImpl repository = Mockito.mock(RecommendationRepoImpl.class);
+    private final BindingsLifecycleController bindings = Mockito.mock(BindingsLifecycleController.class);
+
+    private RecommendationIndexMigration migration;
+
+    @AfterEach
+    void tearDown() {
+        migration.shutdown();
+    }
+
+    @Test
+    void outOfServiceUntilMigratedTest() {
+        Sinks.One<Long> indexed = Sinks.one();
+        Mockito.when(repository.migrateIndexes(false)).thenReturn(indexed.asMono());
+        migration = newMigration(true, Duration.ZERO);
+
+        // The startup does not wait for the migration
+        migration.onApplicationEvent(null);
+        assertEquals(Status.OUT_OF_SERVICE, migration.health().getStatus());
+
+        indexed.tryEmitValue(3L);
+        assertEquals(Status.UP, migration.health().getStatus());
+        Mockito.verify(repository).migrateIndexes(false);
+    }
+
+    @Test
+    void deleteEventsWaitForTheMigrationTest() {
+        Sinks.One<Long> indexed = Sinks.one();
+        Mockito.when(repository.migrateIndexes(false)).thenReturn(indexed.asMono());
+        migration = newMigration(true, Duration.ZERO);
+
+        // A DELETE event consumed now would miss the entities that are not indexed yet
+        migration.onApplicationEvent(null);
+        Mockito.verifyNoInteractions(bindings);
+
+        indexed.tryEmitValue(3L);
+        Mockito.verify(bindings).changeState(Sink.INPUT, BindingsLifecycleController.State.STARTED);
+    }
+
+    @Test
+    void repeatedDuringRolloutTest() {
+        Mockito.when(repository.migrateIndexes(true)).thenReturn(Mono.just(0L));
+        migration = newMigration(true, Duration.ofMillis(10));
+
+        // Entities written by instances without the indexes are picked up by the next pass
+        migration.onApplicationEvent(null);
+        Mockito.verify(repository, Mockito.timeout(5000).atLeast(3)).migrateIndexes(true);
+        assertEquals(Status.UP, migration.health().getStatus());
+        Mockito.verify(bindings).changeState(Sink.INPUT, BindingsLifecycleController.State.STARTED);
+    }
+
+    @Test
+    void disabledTest() {
+        migration = newMigration(false, Duration.ZERO);
+
+        migration.onApplicationEvent(null);
+        assertEquals(Status.UP, migration.health().getStatus());
+        Mockito.verify(bindings).changeState(Sink.INPUT, BindingsLifecycleController.State.STARTED);
+        Mockito.verifyNoInteractions(repository);
+    }
+
+    private RecommendationIndexMigration newMigration(boolean enabled, Duration repeatEvery) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("bindingsLifecycleController", bindings);
+        return new RecommendationIndexMigration(repository, beanFactory.getBeanProvider(BindingsLifecycleController.class),
+                enabled, false, repeatEvery);
+    }
+}
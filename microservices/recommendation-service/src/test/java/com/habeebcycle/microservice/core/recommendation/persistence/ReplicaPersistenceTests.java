@@ -0,0 +1,82 @@
+package com.habeebcycle.microservice.core.recommendation.persistence;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.api.StatefulRedisConnection;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.redis.DataRedisTest;
+import org.springframework.dao.DuplicateKeyException;
+import redis.embedded.RedisServer;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataRedisTest(properties = {"spring.redis.password=", "spring.cloud.config.enabled=false",
+        "app.redis.index-migration.enabled=false",
+        "app.redis.replica-nodes=localhost:6380", "app.redis.read-from=replica"})
+public class ReplicaPersistenceTests {
+
+    @Autowired
+    private RecommendationRepoImpl repository;
+
+    private final static RedisServer REDISSERVER = new RedisServer(6379);
+    private final static RedisServer REPLICASERVER = RedisServer.builder()
+            .port(6380)
+            .slaveOf("localhost", 6379)
+            .build();
+
+    @BeforeAll
+    static void startUpRedisServers() {
+        REDISSERVER.start();
+        REPLICASERVER.start();
+    }
+
+    @AfterAll
+    static void shutDownRedisServers() {
+        REPLICASERVER.stop();
+        REDISSERVER.stop();
+    }
+
+    @Test
+    void readFromReplicaTest() throws InterruptedException {
+        RecommendationEntity entity = repository.save(new RecommendationEntity(1, 2, "a", 3, "c")).block();
+        assertNotNull(entity);
+
+        // Reads only see the write once it has been replicated
+        assertTrue(eventually(() -> repository.findById(entity.getId()).block() != null));
+        assertTrue(eventually(() -> repository.findByProductId(1).count().block() == 1));
+        assertEquals(1, repository.count().block());
+
+        assertTrue(commandStats(6380).contains("cmdstat_zrangebylex"));
+        assertFalse(commandStats(6379).contains("cmdstat_zrangebylex"));
+
+        // The near-cache loads from the primary, which has every write already
+        RecommendationEntity other = repository.save(new RecommendationEntity(1, 3, "a", 3, "c")).block();
+        assertNotNull(other);
+        assertEquals(2, repository.findByProductIdOnPrimary(1).count().block());
+        assertTrue(commandStats(6379).contains("cmdstat_zrangebylex"));
+
+        assertThrows(DuplicateKeyException.class,
+                () -> repository.save(new RecommendationEntity(1, 2, "a", 3, "c")).block());
+    }
+
+    private static boolean eventually(Supplier<Boolean> condition) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            if (condition.get()) return true;
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    private static String commandStats(int port) {
+        RedisClient client = RedisClient.create("redis://localhost:" + port);
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            return connection.sync().info("commandstats");
+        } finally {
+            client.shutdown();
+        }
+    }
+}
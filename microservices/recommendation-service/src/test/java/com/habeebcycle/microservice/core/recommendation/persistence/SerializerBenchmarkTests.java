@@ -0,0 +1,86 @@
+package com.habeebcycle.microservice.core.recommendation.persistence;
+
+import com.habeebcycle.microservice.core.recommendation.persistence.RecommendationEntitySerializer.Format;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bytes per entity and encode/decode cost of the value formats, for a short and a long content.
+ * Not part of the regular build, run it with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+public class SerializerBenchmarkTests {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerializerBenchmarkTests.class);
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int OPERATIONS_PER_ROUND = 20_000;
+
+    private final Map<String, RecommendationEntitySerializer> serializers = new LinkedHashMap<>();
+
+    // Consumes every result so that the JIT cannot drop the measured calls
+    private long sink;
+
+    SerializerBenchmarkTests() {
+        serializers.put("json", new RecommendationEntitySerializer(Format.JSON, 0));
+        serializers.put("smile", new RecommendationEntitySerializer(Format.SMILE, 0));
+        serializers.put("smile+lz4", new RecommendationEntitySerializer(Format.SMILE, 256));
+    }
+
+    @Test
+    void shortContentBenchmark() {
+        benchmark("short", createEntity("Works as described."));
+    }
+
+    @Test
+    void longContentBenchmark() {
+        benchmark("long", createEntity("This product does exactly what it says and the battery lasts for days. "
+                .repeat(20)));
+    }
+
+    private void benchmark(String content, RecommendationEntity entity) {
+        for (Map.Entry<String, RecommendationEntitySerializer> format : serializers.entrySet()) {
+            RecommendationEntitySerializer serializer = format.getValue();
+            byte[] value = serializer.serialize(entity);
+            assertEquals(entity.getContent(), serializer.deserialize(value).getContent());
+
+            double encodeNanos = nanosPerOperation(() -> serializer.serialize(entity).length);
+            double decodeNanos = nanosPerOperation(() -> serializer.deserialize(value).getRating());
+
+            LOG.info("{} content, {}: {} bytes, encode {} ns/op, decode {} ns/op", content, format.getKey(),
+                    value.length, Math.round(encodeNanos), Math.round(decodeNanos));
+        }
+        assertNotEquals(0, sink);
+    }
+
+    // Median over the measured rounds, after the warmup rounds
+    private double nanosPerOperation(Supplier<Integer> operation) {
+        double[] rounds = new double[MEASURED_ROUNDS];
+        for (int round = -WARMUP_ROUNDS; round < MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS_PER_ROUND; i++) {
+                sink += operation.get();
+            }
+            if (round >= 0) rounds[round] = (double) (System.nanoTime() - start) / OPERATIONS_PER_ROUND;
+        }
+        Arrays.sort(rounds);
+        return rounds[MEASURED_ROUNDS / 2];
+    }
+
+    private RecommendationEntity createEntity(String content) {
+        RecommendationEntity entity = new RecommendationEntity(1, 2, "author 1", 3, content);
+        entity.setId("5f0b8c1c2a2f4c6e9d3b7a1e0f4d2c6b");
+        entity.setVersion(4);
+        return entity;
+    }
+}
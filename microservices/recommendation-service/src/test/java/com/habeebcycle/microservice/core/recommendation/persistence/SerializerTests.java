@@ -0,0 +1,85 @@
+package com.habeebcycle.microservice.core.recommendation.persistence;
+
+import com.habeebcycle.microservice.core.recommendation.persistence.RecommendationEntitySerializer.Format;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerializerTests {
+
+    private final RecommendationEntitySerializer jsonSerializer = new RecommendationEntitySerializer(Format.JSON, 0);
+    private final RecommendationEntitySerializer smileSerializer = new RecommendationEntitySerializer(Format.SMILE, 0);
+    private final RecommendationEntitySerializer compressingSerializer = new RecommendationEntitySerializer(Format.SMILE, 256);
+
+    @Test
+    void roundTripTest() {
+        RecommendationEntity entity = createEntity("content");
+
+        assertEqualsRecommendation(entity, jsonSerializer.deserialize(jsonSerializer.serialize(entity)));
+        assertEqualsRecommendation(entity, smileSerializer.deserialize(smileSerializer.serialize(entity)));
+        assertEqualsRecommendation(entity, compressingSerializer.deserialize(compressingSerializer.serialize(entity)));
+        assertNull(smileSerializer.deserialize(smileSerializer.serialize(null)));
+    }
+
+    @Test
+    void mixedFormatTest() {
+        RecommendationEntity entity = createEntity("content");
+
+        // Values written before and after switching the format must stay readable by every instance
+        assertEqualsRecommendation(entity, smileSerializer.deserialize(jsonSerializer.serialize(entity)));
+        assertEqualsRecommendation(entity, jsonSerializer.deserialize(smileSerializer.serialize(entity)));
+
+        RecommendationEntity largeEntity = createEntity(largeContent());
+        assertEqualsRecommendation(largeEntity, jsonSerializer.deserialize(compressingSerializer.serialize(largeEntity)));
+    }
+
+    @Test
+    void compressionTest() {
+        RecommendationEntity entity = createEntity(largeContent());
+
+        byte[] smile = smileSerializer.serialize(entity);
+        byte[] compressed = compressingSerializer.serialize(entity);
+
+        assertEquals('Z', compressed[0]);
+        assertTrue(compressed.length < smile.length);
+        assertEqualsRecommendation(entity, compressingSerializer.deserialize(compressed));
+
+        // Small values are left as they are
+        assertEquals(':', compressingSerializer.serialize(createEntity("content"))[0]);
+    }
+
+    @Test
+    void sizeTest() {
+        RecommendationEntity small = createEntity("content 1");
+        RecommendationEntity large = createEntity(largeContent());
+
+        byte[] smileSmall = smileSerializer.serialize(small);
+        byte[] compressedLarge = compressingSerializer.serialize(large);
+
+        assertTrue(smileSmall.length < jsonSerializer.serialize(small).length);
+        assertTrue(compressedLarge.length < jsonSerializer.serialize(large).length);
+        assertEqualsRecommendation(small, smileSerializer.deserialize(smileSmall));
+        assertEqualsRecommendation(large, compressingSerializer.deserialize(compressedLarge));
+    }
+
+    private RecommendationEntity createEntity(String content) {
+        RecommendationEntity entity = new RecommendationEntity(1, 2, "author 1", 3, content);
+        entity.setId("5f0b8c1c2a2f4c6e9d3b7a1e0f4d2c6b");
+        entity.setVersion(4);
+        return entity;
+    }
+
+    private String largeContent() {
+        return "This product does exactly what it says and the battery lasts for days. ".repeat(20);
+    }
+
+    private void assertEqualsRecommendation(RecommendationEntity expectedEntity, RecommendationEntity actualEntity) {
+        assertEquals(expectedEntity.getId(),               actualEntity.getId());
+        assertEquals(expectedEntity.getVersion(),          actualEntity.getVersion());
+        assertEquals(expectedEntity.getProductId(),        actualEntity.getProductId());
+        assertEquals(expectedEntity.getRecommendationId(), actualEntity.getRecommendationId());
+        assertEquals(expectedEntity.getAuthor(),           actualEntity.getAuthor());
+        assertEquals(expectedEntity.getRating(),           actualEntity.getRating());
+        assertEquals(expectedEntity.getContent(),          actualEntity.getContent());
+    }
+}
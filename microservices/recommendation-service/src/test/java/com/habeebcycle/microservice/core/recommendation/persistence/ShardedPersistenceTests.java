@@ -0,0 +1,135 @@
+package com.habeebcycle.microservice.core.recommendation.persistence;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.redis.DataRedisTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import redis.embedded.RedisServer;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataRedisTest(properties = {"spring.redis.password=", "spring.cloud.config.enabled=false",
+        "app.redis.index-migration.enabled=false",
+        "app.redis.key-layout=sharded", "app.redis.shard-buckets=16"})
+public class ShardedPersistenceTests {
+
+    @Autowired
+    private RecommendationRepoImpl repository;
+
+    @Autowired
+    private ReactiveStringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RecommendationKeyLayout layout;
+
+    private final static RedisServer REDISSERVER = new RedisServer(6379);
+
+    private RecommendationEntity savedEntity;
+
+    @BeforeAll
+    static void startUpRedisServer() {
+        REDISSERVER.start();
+    }
+
+    @AfterAll
+    static void shutDownRedisServer() {
+        REDISSERVER.stop();
+    }
+
+    @BeforeEach
+    void setUpDB() {
+        repository.deleteAll().block();
+
+        savedEntity = repository.save(new RecommendationEntity(1, 2, "a", 3, "c")).block();
+        assertNotNull(savedEntity);
+    }
+
+    @Test
+    void shardedKeysTest() {
+        assertTrue(savedEntity.getId().startsWith("1-"));
+        assertTrue(redisTemplate.hasKey("RECOMMENDATION:{1}").block());
+        assertFalse(redisTemplate.hasKey("RECOMMENDATION").block());
+
+        assertEquals(savedEntity.getId(), repository.findById(savedEntity.getId()).block().getId());
+        assertTrue(repository.existsById(savedEntity.getId()).block());
+        assertFalse(repository.existsById("99-" + savedEntity.getId()).block());
+        assertNotNull(repository.findByProductIdAndRecommendationId(1, 2).block());
+
+        // Every key the scripts write is one of the keys passed to them
+        assertEquals(Set.copyOf(layout.shardFor(1).keys()),
+                Set.copyOf(redisTemplate.keys("RECOMMENDATION:{1}*").collectList().block()));
+    }
+
+    @Test
+    void spreadOverShardsTest() {
+        repository.saveAll(Flux.range(2, 40).map(productId -> new RecommendationEntity(productId, 2, "a", 3, "c")))
+                .blockLast();
+
+        assertEquals(41, repository.count().block());
+        assertEquals(41, repository.findAll().count().block());
+        assertEquals(41, repository.findByRecommendationId(2).count().block());
+
+        List<String> ids = repository.findAll().map(RecommendationEntity::getId).collectList().block();
+        assertEquals(41, repository.findAllById(ids).count().block());
+        assertEquals(16, ids.stream().map(id -> id.substring(0, id.indexOf('-'))).distinct().count());
+
+        repository.deleteAll().block();
+        assertEquals(0, repository.count().block());
+        // Only the index version may be left, an empty store needs no migration
+        assertEquals(List.of(), redisTemplate.keys("RECOMMENDATION*")
+                .filter(key -> !key.equals(layout.getIndexVersionKey()))
+                .collectList().block());
+    }
+
+    @Test
+    void duplicateErrorTest() {
+        assertThrows(DuplicateKeyException.class,
+                () -> repository.save(new RecommendationEntity(1, 2, "a", 3, "c")).block());
+
+        assertEquals(1, repository.count().block());
+    }
+
+    @Test
+    void updateInShardTest() {
+        // 17 maps to the same bucket as 1
+        savedEntity.setProductId(17);
+        repository.save(savedEntity).block();
+
+        assertEquals(0, repository.findByProductId(1).count().block());
+        assertEquals(1, repository.findByProductId(17).count().block());
+
+        savedEntity.setProductId(2);
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> repository.save(savedEntity).block());
+        assertEquals(17, repository.findById(savedEntity.getId()).block().getProductId());
+    }
+
+    @Test
+    void deleteByProductIdTest() {
+        List<RecommendationEntity> entities = IntStream.range(3, 6)
+                .mapToObj(recommendationId -> new RecommendationEntity(1, recommendationId, "a", 3, "c"))
+                .collect(Collectors.toList());
+        repository.saveAll(entities).blockLast();
+        repository.save(new RecommendationEntity(17, 2, "a", 3, "c")).block();
+
+        assertThat(repository.findByProductId(1).collectList().block(), hasSize(4));
+
+        assertEquals(4, repository.deleteByProductId(1).block());
+
+        assertEquals(0, repository.findByProductId(1).count().block());
+        assertEquals(1, repository.findByProductId(17).count().block());
+        assertEquals(1, repository.count().block());
+    }
+}
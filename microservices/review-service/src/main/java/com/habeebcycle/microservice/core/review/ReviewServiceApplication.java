@@ -1,20 +1,25 @@
 package com.habeebcycle.microservice.core.review;
 
+import com.habeebcycle.microservice.core.review.config.JdbcSchedulerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.data.r2dbc.R2dbcDataAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.r2dbc.R2dbcRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Profile;
 import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
 
-import java.util.concurrent.Executors;
-
-@SpringBootApplication
+// R2DBC is configured explicitly by R2dbcConfig in the r2dbc profile only
+@SpringBootApplication(exclude = {R2dbcAutoConfiguration.class, R2dbcDataAutoConfiguration.class,
+		R2dbcRepositoriesAutoConfiguration.class, R2dbcTransactionManagerAutoConfiguration.class})
 @ComponentScan("com.habeebcycle")
 public class ReviewServiceApplication {
 
@@ -27,10 +32,12 @@ public class ReviewServiceApplication {
 		this.connectionPoolSize = connectionPoolSize;
 	}
 
+	// Bridges the blocking JPA repository, the r2dbc profile has no use for it
 	@Bean
-	public Scheduler jdbcScheduler() {
+	@Profile("!r2dbc")
+	public Scheduler jdbcScheduler(JdbcSchedulerFactory schedulerFactory) {
 		LOG.info("Creates a jdbcScheduler with connectionPoolSize = " + connectionPoolSize);
-		return Schedulers.fromExecutor(Executors.newFixedThreadPool(connectionPoolSize));
+		return schedulerFactory.create("jdbcScheduler", connectionPoolSize);
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,143 @@
+package com.habeebcycle.microservice.core.review.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.scheduler.Scheduler;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends read-only transactions to a replica pool and everything else to the primary pool, enabled by setting
+ * app.datasource.replica.url. Reads get their own jdbcReadScheduler sized by the replica pool, so a slow replica
+ * cannot hold the threads of the jdbcScheduler that the writes run on.
+ */
+@Configuration
+@Profile("!r2dbc")
+@ConditionalOnProperty("app.datasource.replica.url")
+public class DataSourceRoutingConfig {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DataSourceRoutingConfig.class);
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    @Value("${spring.datasource.maximum-pool-size:10}")
+    private int primaryPoolSize;
+
+    @Value("${app.datasource.replica.url}")
+    private String replicaUrl;
+
+    @Value("${app.datasource.replica.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${app.datasource.replica.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${app.datasource.replica.maximum-pool-size:10}")
+    private int replicaPoolSize;
+
+    // The replica status query and the column that holds the lag in seconds, MySQL's by default
+    @Value("${app.datasource.replica.lag-query:SHOW SLAVE STATUS}")
+    private String lagQuery;
+
+    @Value("${app.datasource.replica.lag-column:Seconds_Behind_Master}")
+    private String lagColumn;
+
+    @Value("${app.datasource.replica.max-lag:30s}")
+    private Duration maxLag;
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(PRIMARY);
+        dataSource.setMaximumPoolSize(primaryPoolSize);
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource replicaDataSource() {
+        LOG.info("Routes read-only transactions to the replica {} with a pool of max {} connections", replicaUrl, replicaPoolSize);
+
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+        dataSource.setPoolName(REPLICA);
+        dataSource.setMaximumPoolSize(replicaPoolSize);
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    /*
+        JPA takes its connection when the transaction begins, before it is marked as read-only. The lazy proxy
+        defers the lookup to the first statement, when the routing can tell a read-only transaction apart.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        AbstractRoutingDataSource routing = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? REPLICA : PRIMARY;
+            }
+        };
+        routing.setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        routing.setDefaultTargetDataSource(primary);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Bean
+    public Scheduler jdbcReadScheduler(JdbcSchedulerFactory schedulerFactory) {
+        LOG.info("Creates a jdbcReadScheduler with replica connectionPoolSize = " + replicaPoolSize);
+        return schedulerFactory.create("jdbcReadScheduler", replicaPoolSize);
+    }
+
+    @Bean
+    public HealthIndicator replicaLagHealthIndicator(@Qualifier("replicaDataSource") DataSource replica) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(replica);
+        return new AbstractHealthIndicator("Replica lag check failed") {
+            @Override
+            protected void doHealthCheck(Health.Builder builder) {
+                List<Long> lags = jdbcTemplate.query(lagQuery, (rs, rowNum) -> {
+                    long lag = rs.getLong(lagColumn);
+                    return rs.wasNull() ? null : lag;
+                });
+
+                if (lags.isEmpty() || lags.get(0) == null) {
+                    builder.down().withDetail("error", "The replica is not replicating");
+                    return;
+                }
+
+                long lag = lags.get(0);
+                builder.status(lag <= maxLag.getSeconds() ? Status.UP : Status.OUT_OF_SERVICE)
+                        .withDetail("lagSeconds", lag)
+                        .withDetail("maxLagSeconds", maxLag.getSeconds());
+            }
+        };
+    }
+}
@@ -0,0 +1,188 @@
+package com.habeebcycle.microservice.core.review.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the schedulers that run blocking JDBC work. Each one runs at most a given number of tasks and queues
+ * at most app.jdbc-scheduler.queue-capacity more, further tasks are rejected with a RejectedExecutionException
+ * instead of waiting without limit.
+ *
+ * With app.jdbc-scheduler.virtual-threads=true and a JDK that has virtual threads, every task gets its own
+ * virtual thread. The same limits apply, the virtual threads beyond the given number of running tasks wait for a
+ * permit before they start their task.
+ *
+ * Metrics, tagged with the scheduler name:
+ * jdbc.scheduler.queued   - tasks waiting for a thread
+ * jdbc.scheduler.active   - tasks running
+ * jdbc.scheduler.wait     - time from submission until a task starts
+ * jdbc.scheduler.rejected - tasks rejected because the scheduler was full
+ */
+@Component
+public class JdbcSchedulerFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcSchedulerFactory.class);
+
+    private final MeterRegistry meterRegistry;
+    private final int queueCapacity;
+    private final boolean virtualThreads;
+    private final List<ExecutorService> executors = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public JdbcSchedulerFactory(ObjectProvider<MeterRegistry> meterRegistry,
+                                @Value("${app.jdbc-scheduler.queue-capacity:100}") int queueCapacity,
+                                @Value("${app.jdbc-scheduler.virtual-threads:false}") boolean virtualThreads) {
+        this.meterRegistry = meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+        this.queueCapacity = queueCapacity;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @param name - the name of the scheduler, used for its threads and metrics
+     * @param concurrency - the max number of tasks running at the same time
+     * @return a scheduler that rejects tasks once concurrency tasks run and queue-capacity more wait
+     */
+    public Scheduler create(String name, int concurrency) {
+        Timer waitTimer = Timer.builder("jdbc.scheduler.wait")
+                .description("Time from submission until a task starts")
+                .tag("name", name)
+                .register(meterRegistry);
+        Counter rejected = Counter.builder("jdbc.scheduler.rejected")
+                .description("Tasks rejected because the scheduler was full")
+                .tag("name", name)
+                .register(meterRegistry);
+
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualThreads && virtualExecutor == null) {
+            LOG.warn("Virtual threads are not available on this JDK, {} uses a pool of platform threads", name);
+        }
+
+        BoundedExecutor executor = virtualExecutor != null
+                ? new BoundedExecutor(virtualExecutor, concurrency + queueCapacity, concurrency)
+                : new BoundedExecutor(newThreadPool(name, concurrency), concurrency + queueCapacity, concurrency);
+        executors.add(executor.delegate);
+
+        Gauge.builder("jdbc.scheduler.queued", executor, BoundedExecutor::queued)
+                .description("Tasks waiting for a thread")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("jdbc.scheduler.active", executor, BoundedExecutor::active)
+                .description("Tasks running")
+                .tag("name", name)
+                .register(meterRegistry);
+
+        LOG.info("Creates {} running {} tasks on {} threads with a queue of {}",
+                name, concurrency, virtualExecutor != null ? "virtual" : "platform", queueCapacity);
+
+        return Schedulers.fromExecutor(task -> {
+            long submitted = System.nanoTime();
+            try {
+                executor.execute(() -> {
+                    waitTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                    task.run();
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw e;
+            }
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executors.forEach(ExecutorService::shutdown);
+    }
+
+    // The queue itself is unbounded, BoundedExecutor keeps it within the queue capacity
+    private static ExecutorService newThreadPool(String name, int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory(name + "-"));
+    }
+
+    // Looked up reflectively, the service is built for JDKs that do not have virtual threads
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /*
+        Admits at most capacity tasks that are either running or waiting to run, and runs at most concurrency of them
+        at the same time. A thread pool of concurrency threads never waits for a running permit, a virtual thread
+        per task executor relies on them.
+     */
+    static class BoundedExecutor {
+
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+        private final Semaphore runningPermits;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+
+        BoundedExecutor(ExecutorService delegate, int capacity, int concurrency) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(capacity);
+            this.runningPermits = new Semaphore(concurrency);
+        }
+
+        void execute(Runnable task) {
+            if (!permits.tryAcquire()) {
+                throw new RejectedExecutionException("Too many tasks waiting for a JDBC thread");
+            }
+            inFlight.incrementAndGet();
+            try {
+                delegate.execute(() -> {
+                    runningPermits.acquireUninterruptibly();
+                    running.incrementAndGet();
+                    try {
+                        task.run();
+                    } finally {
+                        running.decrementAndGet();
+                        runningPermits.release();
+                        inFlight.decrementAndGet();
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.decrementAndGet();
+                permits.release();
+                throw e;
+            }
+        }
+
+        // Counted from the two counters, a task in between them is briefly neither queued nor active
+        int queued() {
+            return Math.max(inFlight.get() - running.get(), 0);
+        }
+
+        int active() {
+            return running.get();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.habeebcycle.microservice.core.review.config;
+
+import com.habeebcycle.microservice.core.review.persistence.ReactiveReviewRepository;
+import com.habeebcycle.microservice.core.review.persistence.ReviewRepository;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * Blocking JPA persistence, the default mode. The reactive repository is left to R2dbcConfig,
+ * Spring Data JPA refuses to implement it.
+ */
+@Configuration
+@Profile("!r2dbc")
+@EnableJpaRepositories(basePackageClasses = ReviewRepository.class,
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ReactiveReviewRepository.class))
+public class JpaConfig {
+}
@@ -0,0 +1,194 @@
+package com.habeebcycle.microservice.core.review.config;
+
+import com.habeebcycle.microservice.core.review.persistence.ReactiveReviewRepository;
+import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mapping.model.Property;
+import org.springframework.data.mapping.model.SimpleTypeHolder;
+import org.springframework.data.r2dbc.config.AbstractR2dbcConfiguration;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+import org.springframework.data.r2dbc.mapping.event.BeforeConvertCallback;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.data.relational.core.mapping.BasicRelationalPersistentProperty;
+import org.springframework.data.relational.core.mapping.NamingStrategy;
+import org.springframework.data.relational.core.mapping.RelationalPersistentEntity;
+import org.springframework.data.relational.core.mapping.RelationalPersistentProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import java.util.Optional;
+
+/**
+ * Reactive persistence for the r2dbc profile, replaces the JPA repository and the jdbcScheduler thread pool.
+ * The schema is still migrated by Flyway over JDBC, set spring.flyway.url to the database of spring.r2dbc.url.
+ */
+@Configuration
+@Profile("r2dbc")
+@EnableR2dbcRepositories(basePackageClasses = ReactiveReviewRepository.class)
+public class R2dbcConfig extends AbstractR2dbcConfiguration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(R2dbcConfig.class);
+
+    @Value("${spring.r2dbc.url}")
+    private String url;
+
+    @Value("${spring.r2dbc.username:}")
+    private String username;
+
+    @Value("${spring.r2dbc.password:}")
+    private String password;
+
+    @Value("${spring.r2dbc.pool.initial-size:1}")
+    private int poolInitialSize;
+
+    @Value("${spring.r2dbc.pool.max-size:10}")
+    private int poolMaxSize;
+
+    @Bean(destroyMethod = "dispose")
+    @Override
+    public ConnectionPool connectionFactory() {
+        LOG.info("Connects to {} with a pool of max {} connections", url, poolMaxSize);
+
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (!username.isEmpty()) options.option(ConnectionFactoryOptions.USER, username);
+        if (!password.isEmpty()) options.option(ConnectionFactoryOptions.PASSWORD, password);
+
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options.build()))
+                .initialSize(poolInitialSize)
+                .maxSize(poolMaxSize)
+                .build());
+    }
+
+    /*
+        ReviewEntity is annotated for JPA, which refuses the Spring Data @Id/@Version annotations R2DBC looks for.
+        This mapping context reads the table name, id and version from the JPA annotations instead.
+     */
+    @Bean
+    @Override
+    public R2dbcMappingContext r2dbcMappingContext(Optional<NamingStrategy> namingStrategy,
+                                                   R2dbcCustomConversions r2dbcCustomConversions) {
+        R2dbcMappingContext context = new JpaAnnotatedMappingContext(namingStrategy.orElse(new JpaTableNamingStrategy()));
+        context.setSimpleTypeHolder(r2dbcCustomConversions.getSimpleTypeHolder());
+        return context;
+    }
+
+    // The JPA id is a primitive int, an unsaved review has id 0 and gets one from the blocks the JPA mode uses too
+    @Bean
+    public BeforeConvertCallback<ReviewEntity> reviewIdCallback(DatabaseClient databaseClient) {
+        PooledLoIdGenerator idGenerator = new PooledLoIdGenerator(databaseClient, ReviewEntity.ID_TABLE,
+                Integer.parseInt(ReviewEntity.ID_BLOCK_SIZE));
+        return (entity, table) -> {
+            if (entity.getId() != 0) return Mono.just(entity);
+            return idGenerator.nextId().map(id -> {
+                entity.setId(id);
+                return entity;
+            });
+        };
+    }
+
+    /*
+        Claims blocks of ids from the table the way Hibernate's pooled-lo optimizer does: the next_val read is the
+        first id of the block and next_val moves on by a block. The move only succeeds if no other instance claimed
+        the same block in between, otherwise it is tried again. Concurrent callers may each claim a block, the rest
+        of a replaced block is skipped but its ids are never handed out twice.
+     */
+    private static class PooledLoIdGenerator {
+
+        private static final int MAX_CLAIM_ATTEMPTS = 100;
+
+        private final DatabaseClient databaseClient;
+        private final String selectSql;
+        private final String updateSql;
+        private final int blockSize;
+
+        private long next;
+        private long limit;
+
+        PooledLoIdGenerator(DatabaseClient databaseClient, String table, int blockSize) {
+            this.databaseClient = databaseClient;
+            this.selectSql = "SELECT next_val FROM " + table;
+            this.updateSql = "UPDATE " + table + " SET next_val = :next WHERE next_val = :value";
+            this.blockSize = blockSize;
+        }
+
+        Mono<Integer> nextId() {
+            return Mono.defer(() -> {
+                Integer id = takeId();
+                return id != null ? Mono.just(id) : claimBlock().map(this::startBlock);
+            });
+        }
+
+        private synchronized Integer takeId() {
+            return next < limit ? Math.toIntExact(next++) : null;
+        }
+
+        private synchronized int startBlock(long first) {
+            next = first + 1;
+            limit = first + blockSize;
+            return Math.toIntExact(first);
+        }
+
+        private Mono<Long> claimBlock() {
+            return databaseClient.sql(selectSql)
+                    .map(row -> row.get(0, Long.class))
+                    .one()
+                    .flatMap(value -> databaseClient.sql(updateSql)
+                            .bind("next", value + blockSize)
+                            .bind("value", value)
+                            .fetch().rowsUpdated()
+                            .filter(updated -> updated == 1)
+                            .map(updated -> value))
+                    .repeatWhenEmpty(MAX_CLAIM_ATTEMPTS, attempts -> attempts);
+        }
+    }
+
+    private static class JpaTableNamingStrategy implements NamingStrategy {
+
+        @Override
+        public String getTableName(Class<?> type) {
+            Table table = type.getAnnotation(Table.class);
+            return table != null && !table.name().isEmpty() ? table.name() : NamingStrategy.super.getTableName(type);
+        }
+    }
+
+    private static class JpaAnnotatedMappingContext extends R2dbcMappingContext {
+
+        JpaAnnotatedMappingContext(NamingStrategy namingStrategy) {
+            super(namingStrategy);
+        }
+
+        @Override
+        protected RelationalPersistentProperty createPersistentProperty(Property property,
+                                                                        RelationalPersistentEntity<?> owner,
+                                                                        SimpleTypeHolder simpleTypeHolder) {
+            BasicRelationalPersistentProperty persistentProperty =
+                    new BasicRelationalPersistentProperty(property, owner, simpleTypeHolder, this) {
+
+                        @Override
+                        public boolean isIdProperty() {
+                            return super.isIdProperty() || isAnnotationPresent(Id.class);
+                        }
+
+                        @Override
+                        public boolean isVersionProperty() {
+                            return super.isVersionProperty() || isAnnotationPresent(Version.class);
+                        }
+                    };
+            persistentProperty.setForceQuote(isForceQuote());
+            return persistentProperty;
+        }
+    }
+}
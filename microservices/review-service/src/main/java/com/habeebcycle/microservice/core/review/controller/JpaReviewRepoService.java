@@ -0,0 +1,179 @@
+package com.habeebcycle.microservice.core.review.controller;
+
+import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
+import com.habeebcycle.microservice.core.review.persistence.ReviewRepository;
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionException;
+
+/*
+    Runs every blocking JPA call on the jdbcScheduler, so callers on the event loop are never blocked. When reads
+    are routed to a replica they run on the jdbcReadScheduler instead.
+ */
+@Service
+@Profile("!r2dbc")
+public class JpaReviewRepoService implements ReviewRepoService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JpaReviewRepoService.class);
+
+    private final ReviewRepository repository;
+    private final Scheduler scheduler;
+    private final Scheduler readScheduler;
+    private final ReviewBatchWriter batchWriter;
+    private final SessionFactory sessionFactory;
+    private final DataSource replicaDataSource;
+    private final int streamFetchSize;
+
+    @Autowired
+    public JpaReviewRepoService(ReviewRepository repository, @Qualifier("jdbcScheduler") Scheduler scheduler,
+                                @Qualifier("jdbcReadScheduler") ObjectProvider<Scheduler> readScheduler,
+                                ReviewBatchWriter batchWriter, EntityManagerFactory entityManagerFactory,
+                                @Qualifier("replicaDataSource") ObjectProvider<DataSource> replicaDataSource,
+                                @Value("${app.review.stream.fetch-size:100}") int streamFetchSize) {
+        this.repository = repository;
+        this.scheduler = scheduler;
+        this.readScheduler = readScheduler.getIfAvailable(() -> scheduler);
+        this.batchWriter = batchWriter;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.replicaDataSource = replicaDataSource.getIfAvailable();
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductId(int productId) {
+        return Flux.defer(() -> Flux.fromIterable(repository.findByProductId(productId)))
+                .subscribeOn(readScheduler);
+    }
+
+    @Override
+    public Flux<Review> findReviewsByProductId(int productId) {
+        return Flux.defer(() -> Flux.fromIterable(repository.findReviewsByProductId(productId)))
+                .subscribeOn(readScheduler);
+    }
+
+    @Override
+    public Flux<ReviewEntity> findPageByProductId(int productId, int afterReviewId, int limit) {
+        return Flux.defer(() -> Flux.fromIterable(repository.findByProductIdAndReviewIdGreaterThanOrderByReviewId(
+                        productId, afterReviewId, PageRequest.of(0, limit))))
+                .subscribeOn(readScheduler);
+    }
+
+    /*
+        Scrolls a forward only cursor of a stateless session, so neither the result set nor a persistence context
+        holds more than a fetch of reviews. The cursor keeps its connection until the stream completes or is
+        cancelled, and subscribeOn also moves every request for more reviews to the read scheduler.
+     */
+    @Override
+    public Flux<ReviewEntity> streamByProductId(int productId) {
+        return Flux.using(() -> new ReviewCursor(productId),
+                        cursor -> Flux.<ReviewEntity>generate(sink -> {
+                            if (cursor.results.next()) sink.next((ReviewEntity) cursor.results.get(0));
+                            else sink.complete();
+                        }),
+                        this::closeLater)
+                .subscribeOn(readScheduler);
+    }
+
+    @Override
+    public Mono<ReviewEntity> save(ReviewEntity entity) {
+        return Mono.fromCallable(() -> repository.save(entity))
+                .subscribeOn(scheduler);
+    }
+
+    @Override
+    public Mono<ReviewEntity> saveInBatch(ReviewEntity entity) {
+        return batchWriter.save(entity);
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductId(int productId) {
+        return Mono.fromCallable(() -> repository.deleteByProductId(productId))
+                .subscribeOn(scheduler);
+    }
+
+    /*
+        The cursor is released on the read scheduler, as a cancel can arrive on the event loop. When the scheduler
+        is full the cursor is released right away instead, a briefly blocked thread is better than a leaked connection.
+     */
+    private void closeLater(ReviewCursor cursor) {
+        try {
+            readScheduler.schedule(cursor::close);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("closeLater: the read scheduler is full, closes the review cursor on the calling thread");
+            cursor.close();
+        }
+    }
+
+    private class ReviewCursor {
+
+        private Connection connection;
+        private StatelessSession session;
+        private Transaction transaction;
+        private ScrollableResults results;
+
+        // A stateless session has no Spring transaction to route by, a replica connection is handed to it instead
+        private ReviewCursor(int productId) throws SQLException {
+            connection = replicaDataSource != null ? replicaDataSource.getConnection() : null;
+            try {
+                session = connection != null ? sessionFactory.openStatelessSession(connection) : sessionFactory.openStatelessSession();
+                transaction = session.beginTransaction();
+                results = session.createQuery(
+                        "SELECT r FROM ReviewEntity r WHERE r.productId = :productId ORDER BY r.reviewId", ReviewEntity.class)
+                        .setParameter("productId", productId)
+                        .setFetchSize(streamFetchSize)
+                        .setReadOnly(true)
+                        .scroll(ScrollMode.FORWARD_ONLY);
+            } catch (RuntimeException e) {
+                try {
+                    close();
+                } catch (RuntimeException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                throw e;
+            }
+        }
+
+        // Releases whatever the constructor got to open, the connection even when closing the session fails
+        private void close() {
+            try {
+                if (results != null) results.close();
+                if (transaction != null && transaction.isActive()) transaction.commit();
+            } finally {
+                try {
+                    if (session != null) session.close();
+                } finally {
+                    if (connection != null) closeConnection();
+                }
+            }
+        }
+
+        private void closeConnection() {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOG.warn("Failed to close the replica connection of a review stream: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.habeebcycle.microservice.core.review.controller;
+
+import com.habeebcycle.microservice.core.review.persistence.ReactiveReviewRepository;
+import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+@Profile("r2dbc")
+public class R2dbcReviewRepoService implements ReviewRepoService {
+
+    private final ReactiveReviewRepository repository;
+    private final ReviewMapper mapper;
+
+    @Autowired
+    public R2dbcReviewRepoService(ReactiveReviewRepository repository, ReviewMapper mapper) {
+        this.repository = repository;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductId(int productId) {
+        return repository.findByProductId(productId);
+    }
+
+    // R2DBC has no persistence context to skip, the entities are mapped as they arrive
+    @Override
+    public Flux<Review> findReviewsByProductId(int productId) {
+        return repository.findByProductId(productId).map(mapper::entityToApi);
+    }
+
+    @Override
+    public Flux<ReviewEntity> findPageByProductId(int productId, int afterReviewId, int limit) {
+        return repository.findByProductIdAndReviewIdGreaterThanOrderByReviewId(productId, afterReviewId, PageRequest.of(0, limit));
+    }
+
+    // R2DBC drivers fetch rows as they are requested
+    @Override
+    public Flux<ReviewEntity> streamByProductId(int productId) {
+        return repository.findByProductIdOrderByReviewId(productId);
+    }
+
+    @Override
+    public Mono<ReviewEntity> save(ReviewEntity entity) {
+        return repository.save(entity);
+    }
+
+    @Override
+    public Mono<ReviewEntity> saveInBatch(ReviewEntity entity) {
+        return repository.save(entity);
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductId(int productId) {
+        return repository.deleteByProductId(productId);
+    }
+}
@@ -0,0 +1,108 @@
+package com.habeebcycle.microservice.core.review.controller;
+
+import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
+import com.habeebcycle.microservice.core.review.persistence.ReviewRepository;
+import com.habeebcycle.microservice.library.util.reactive.EmitFailureHandlers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Buffers reviews saved by concurrent callers into micro-batches of up to app.review.batch.size reviews, waiting
+ * at most app.review.batch.max-wait for a batch to fill. Each batch is inserted in one transaction, which
+ * Hibernate sends as JDBC batches. If a batch fails, e.g. on a duplicate key, it is split in halves that are
+ * written again, down to the single reviews that fail, so every caller still gets its own result.
+ */
+@Component
+@Profile("!r2dbc")
+public class ReviewBatchWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReviewBatchWriter.class);
+
+    private final ReviewRepository repository;
+    private final Sinks.Many<PendingReview> pending = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable writer;
+
+    @Autowired
+    public ReviewBatchWriter(ReviewRepository repository,
+                             @Qualifier("jdbcScheduler") Scheduler scheduler,
+                             @Value("${app.review.batch.size:50}") int batchSize,
+                             @Value("${app.review.batch.max-wait:10ms}") Duration maxWait) {
+        this.repository = repository;
+        this.writer = pending.asFlux()
+                .bufferTimeout(batchSize, maxWait)
+                .concatMap(batch -> Mono.fromRunnable(() -> write(batch))
+                        .subscribeOn(scheduler)
+                        .onErrorResume(e -> {
+                            batch.forEach(review -> review.result.tryEmitError(e));
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    /**
+     * @param entity - the review to store
+     * @return the stored review, or a DataIntegrityViolationException if the productId/reviewId pair already exists
+     */
+    public Mono<ReviewEntity> save(ReviewEntity entity) {
+        return Mono.defer(() -> {
+            PendingReview review = new PendingReview(entity);
+            pending.emitNext(review, EmitFailureHandlers.RETRY_NON_SERIALIZED);
+            return review.result.asMono();
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        writer.dispose();
+    }
+
+    // A failing review costs about two transactions per halving instead of one per review of the batch
+    private void write(List<PendingReview> batch) {
+        List<ReviewEntity> entities = batch.stream().map(review -> review.entity).collect(Collectors.toList());
+        try {
+            repository.saveAll(entities);
+            LOG.debug("write: inserted a batch of {} reviews", batch.size());
+            batch.forEach(review -> review.result.tryEmitValue(review.entity));
+        } catch (RuntimeException e) {
+            // The rolled back transaction has already assigned an id and a version to the entities
+            entities.forEach(entity -> {
+                entity.setId(0);
+                entity.setVersion(null);
+            });
+
+            if (batch.size() == 1) {
+                batch.get(0).result.tryEmitError(e);
+                return;
+            }
+
+            LOG.debug("write: a batch of {} reviews failed, writes it in halves: {}", batch.size(), e.getMessage());
+            int half = batch.size() / 2;
+            write(batch.subList(0, half));
+            write(batch.subList(half, batch.size()));
+        }
+    }
+
+    private static class PendingReview {
+
+        private final ReviewEntity entity;
+        private final Sinks.One<ReviewEntity> result = Sinks.one();
+
+        private PendingReview(ReviewEntity entity) {
+            this.entity = entity;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.habeebcycle.microservice.core.review.controller;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+    Per-instance cache of the reviews of a product. Writes invalidate the product locally and announce it on the
+    review changes channel, so every other instance drops its entry as well. Invalidating also discards a load
+    that is still in flight, so a read racing with a write is never cached. The TTL bounds staleness if a change
+    notification is lost.
+
+    When reads go to a replica, a miss right after a write can load reviews the replica has not caught up with yet.
+    With app.cache.reviews.reinvalidate-after set to the replica lag window, the entry is dropped a second time once
+    the replica has caught up, instead of serving the stale reviews for the whole TTL.
+ */
+@Component
+public class ReviewCache {
+
+    private final AsyncCache<Integer, List<Review>> productCache;
+    private final Duration reinvalidateAfter;
+    private final Scheduler reinvalidateScheduler;
+
+    @Autowired
+    public ReviewCache(ObjectProvider<MeterRegistry> meterRegistry,
+                       @Value("${app.cache.reviews.enabled:true}") boolean cacheEnabled,
+                       @Value("${app.cache.reviews.maximum-size:10000}") long maximumSize,
+                       @Value("${app.cache.reviews.ttl-seconds:60}") long ttlSeconds,
+                       @Value("${app.cache.reviews.reinvalidate-after:0s}") Duration reinvalidateAfter) {
+        this(meterRegistry, cacheEnabled, maximumSize, ttlSeconds, reinvalidateAfter, Schedulers.parallel());
+    }
+
+    // The scheduler lets the tests move the second invalidation forward in virtual time
+    ReviewCache(ObjectProvider<MeterRegistry> meterRegistry, boolean cacheEnabled, long maximumSize, long ttlSeconds,
+                Duration reinvalidateAfter, Scheduler reinvalidateScheduler) {
+
+        this.reinvalidateAfter = reinvalidateAfter;
+        this.reinvalidateScheduler = reinvalidateScheduler;
+
+        if (!cacheEnabled) {
+            this.productCache = null;
+            return;
+        }
+
+        this.productCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .buildAsync();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, productCache, "reviews"));
+    }
+
+    public Flux<Review> findByProductId(int productId, Function<Integer, Flux<Review>> loader) {
+        if (productCache == null) return loader.apply(productId);
+
+        // Each subscriber gets its own copies, so callers can neither modify cached reviews nor cancel a shared load
+        return Mono.fromFuture(() -> productCache
+                        .get(productId, (id, executor) -> loader.apply(id).collectList().toFuture())
+                        .thenApply(ReviewCache::copyOf))
+                .flatMapIterable(reviews -> reviews);
+    }
+
+    public void invalidate(int productId) {
+        if (productCache == null) return;
+
+        productCache.synchronous().invalidate(productId);
+        if (!reinvalidateAfter.isZero()) {
+            Mono.delay(reinvalidateAfter, reinvalidateScheduler).subscribe(tick -> productCache.synchronous().invalidate(productId));
+        }
+    }
+
+    public void invalidateAll() {
+        if (productCache != null) productCache.synchronous().invalidateAll();
+    }
+
+    private static List<Review> copyOf(List<Review> reviews) {
+        return reviews.stream()
+                .map(r -> new Review(r.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(),
+                        r.getServiceAddress()))
+                .collect(Collectors.toList());
+    }
+}
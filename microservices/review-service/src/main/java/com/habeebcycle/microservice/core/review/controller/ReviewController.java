@@ -1,23 +1,26 @@
 package com.habeebcycle.microservice.core.review.controller;
 
+import com.habeebcycle.microservice.core.review.messaging.ReviewChangeNotifier;
 import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
-import com.habeebcycle.microservice.core.review.persistence.ReviewRepository;
 import com.habeebcycle.microservice.library.api.core.review.Review;
 import com.habeebcycle.microservice.library.api.core.review.ReviewService;
 import com.habeebcycle.microservice.library.util.exceptions.BadRequestException;
 import com.habeebcycle.microservice.library.util.exceptions.InvalidInputException;
+import com.habeebcycle.microservice.library.util.exceptions.ServiceUnavailableException;
 import com.habeebcycle.microservice.library.util.http.ServiceUtil;
-import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
-import reactor.core.scheduler.Scheduler;
+import reactor.core.publisher.Mono;
 
-import java.util.List;
-import java.util.function.Supplier;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 @RestController
@@ -25,58 +28,138 @@ public class ReviewController implements ReviewService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReviewController.class);
 
-    private final ReviewRepository repository;
+    private final ReviewRepoService repository;
     private final ReviewMapper mapper;
     private final ServiceUtil serviceUtil;
-    private final Scheduler scheduler;
+    private final ReviewCache cache;
+    private final ReviewChangeNotifier changeNotifier;
+    private final int maxPageSize;
+    private final Duration streamTimeout;
 
     @Autowired
-    public ReviewController(Scheduler scheduler, ReviewRepository repository, ReviewMapper mapper, ServiceUtil serviceUtil) {
-        this.scheduler = scheduler;
+    public ReviewController(ReviewRepoService repository, ReviewMapper mapper, ServiceUtil serviceUtil,
+                            ReviewCache cache, ReviewChangeNotifier changeNotifier,
+                            @Value("${app.review.page.max-size:100}") int maxPageSize,
+                            @Value("${app.review.stream.timeout:30s}") Duration streamTimeout) {
         this.repository = repository;
         this.mapper = mapper;
         this.serviceUtil = serviceUtil;
+        this.cache = cache;
+        this.changeNotifier = changeNotifier;
+        this.maxPageSize = maxPageSize;
+        this.streamTimeout = streamTimeout;
     }
 
     @Override
     public Flux<Review> getReviews(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
-        List<ReviewEntity> entityList = repository.findByProductId(productId);
-        List<Review> list = mapper.entityListToApiList(entityList);
-        list.forEach(e -> e.setServiceAddress(serviceUtil.getServiceAddress()));
-
         LOG.info("Will get reviews for product with id={}", productId);
-        LOG.debug("getReviews: response size: {}", list.size());
 
-        return asyncFlux(() -> Flux.fromIterable(list)).log(null, Level.FINE);
+        return withServiceAddress(cache.findByProductId(productId, repository::findReviewsByProductId));
+    }
+
+    @Override
+    public Flux<Review> getReviewsPage(int productId, int after, int limit) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (limit < 1) throw new InvalidInputException("Invalid limit: " + limit);
+
+        LOG.info("Will get up to {} reviews after reviewId={} for product with id={}", limit, after, productId);
+
+        return toApi(repository.findPageByProductId(productId, after, Math.min(limit, maxPageSize)));
+    }
+
+    @Override
+    public Flux<Review> streamReviews(int productId) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+
+        LOG.info("Will stream reviews for product with id={}", productId);
+
+        return toApi(withDeadline(repository.streamByProductId(productId)));
     }
 
     @Override
     public Review createReview(Review body) {
+        return createReviewAsync(body).block();
+    }
 
-        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+    public Mono<Review> createReviewAsync(Review body) {
+        return createReview(body, repository::save)
+                .doOnSuccess(review -> changeNotifier.reviewsChanged(body.getProductId()));
+    }
+
+    /**
+     * Creates the review in a micro-batch shared with the reviews created at the same time, used for CREATE events.
+     */
+    public Mono<Review> createReviewInBatch(Review body) {
+        return createReview(body, repository::saveInBatch)
+                .doOnSuccess(review -> changeNotifier.reviewsChangedInBatch(body.getProductId()));
+    }
+
+    /*
+        A stream holds a database connection until its client has read it all, from the shared pool in JPA mode.
+        A stream still open after app.review.stream.timeout fails with a TimeoutException, which releases the
+        connection, so slow clients can not starve the other requests of connections.
+     */
+    private <T> Flux<T> withDeadline(Flux<T> stream) {
+        return Flux.defer(() -> {
+            Mono<Long> deadline = Mono.delay(streamTimeout).cache();
+            return stream.timeout(deadline, item -> deadline)
+                    .doOnError(TimeoutException.class,
+                            ex -> LOG.warn("Ends a review stream still open after {}", streamTimeout));
+        });
+    }
+
+    private Flux<Review> toApi(Flux<ReviewEntity> entities) {
+        return withServiceAddress(entities.map(mapper::entityToApi));
+    }
+
+    // The mapping runs on the thread the repository emits on, the jdbcScheduler in JPA mode
+    private Flux<Review> withServiceAddress(Flux<Review> reviews) {
+        return reviews
+                .map(e -> {
+                    e.setServiceAddress(serviceUtil.getServiceAddress());
+                    return e;
+                })
+                .onErrorMap(RejectedExecutionException.class, this::overloaded)
+                .log(null, Level.FINE);
+    }
 
-        try {
-            ReviewEntity entity = mapper.apiToEntity(body);
-            ReviewEntity newEntity = repository.save(entity);
+    // The jdbcScheduler rejects work once its queue is full, tell the caller to back off rather than wait
+    private ServiceUnavailableException overloaded(RejectedExecutionException ex) {
+        LOG.warn("Rejects a request, the review store is overloaded: {}", ex.getMessage());
+        return new ServiceUnavailableException("Review service is overloaded, please retry later");
+    }
+
+    private Mono<Review> createReview(Review body, Function<ReviewEntity, Mono<ReviewEntity>> save) {
+
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
 
-            LOG.debug("createReview: created a review entity: {}/{}", body.getProductId(), body.getReviewId());
-            return mapper.entityToApi(newEntity);
+        ReviewEntity entity = mapper.apiToEntity(body);
 
-        } catch (DataIntegrityViolationException dive) {
-            throw new BadRequestException("Duplicate key, Product Id: " + body.getProductId() + ", Review Id: " + body.getReviewId());
-        }
+        return save.apply(entity)
+                .doOnNext(e -> LOG.debug("createReview: created a review entity: {}/{}", body.getProductId(), body.getReviewId()))
+                .onErrorMap(DataIntegrityViolationException.class,
+                        ex -> new BadRequestException("Duplicate key, Product Id: " + body.getProductId() + ", Review Id: " + body.getReviewId()))
+                .onErrorMap(RejectedExecutionException.class, this::overloaded)
+                .map(mapper::entityToApi);
     }
 
     @Override
     public void deleteReviews(int productId) {
-        LOG.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId));
+        deleteReviewsAsync(productId).block();
     }
 
-    // Utility method of converting list to a publisher
-    private <T> Flux<T> asyncFlux(Supplier<Publisher<T>> publisherSupplier) {
-        return Flux.defer(publisherSupplier).subscribeOn(scheduler);
+    /**
+     * @param productId - the product whose reviews are deleted
+     * @return the number of reviews removed
+     */
+    public Mono<Integer> deleteReviewsAsync(int productId) {
+        return Mono.defer(() -> {
+            LOG.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
+            return repository.deleteByProductId(productId);
+        })
+                .onErrorMap(RejectedExecutionException.class, this::overloaded)
+                .doOnSuccess(count -> changeNotifier.reviewsChanged(productId));
     }
 }
@@ -0,0 +1,53 @@
+package com.habeebcycle.microservice.core.review.controller;
+
+import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive access to the stored reviews, backed by JPA on the jdbcScheduler by default
+ * or by R2DBC in the r2dbc profile.
+ */
+public interface ReviewRepoService {
+
+    Flux<ReviewEntity> findByProductId(int productId);
+
+    /**
+     * Read-only variant of findByProductId that skips the entities.
+     *
+     * @param productId - the product whose reviews are returned
+     * @return the reviews without a service address
+     */
+    Flux<Review> findReviewsByProductId(int productId);
+
+    /**
+     * @param productId - the product whose reviews are returned
+     * @param afterReviewId - only reviews with a greater reviewId are returned
+     * @param limit - the max number of reviews returned
+     * @return the reviews ordered by reviewId
+     */
+    Flux<ReviewEntity> findPageByProductId(int productId, int afterReviewId, int limit);
+
+    /**
+     * Streams the reviews ordered by reviewId from a database cursor, honouring the subscriber's demand.
+     */
+    Flux<ReviewEntity> streamByProductId(int productId);
+
+    /**
+     * @param entity - the review to store
+     * @return the stored review, or a DataIntegrityViolationException if the productId/reviewId pair already exists
+     */
+    Mono<ReviewEntity> save(ReviewEntity entity);
+
+    /**
+     * Like save, but lets the review share a transaction with reviews saved concurrently.
+     */
+    Mono<ReviewEntity> saveInBatch(ReviewEntity entity);
+
+    /**
+     * @param productId - the product whose reviews are deleted
+     * @return the number of reviews removed
+     */
+    Mono<Integer> deleteByProductId(int productId);
+}
@@ -4,50 +4,87 @@ import com.habeebcycle.microservice.core.review.controller.ReviewController;
 import com.habeebcycle.microservice.library.api.core.review.Review;
 import com.habeebcycle.microservice.library.api.event.DataEvent;
 import com.habeebcycle.microservice.library.util.exceptions.EventProcessingException;
+import com.habeebcycle.microservice.library.util.reactive.OrderedEventProcessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
+/*
+    A CREATE is handed to the batch writer without waiting for it, so that the reviews of many events share a batch.
+    A DELETE waits for the CREATEs before it, so the reviews of a product are never deleted before they are created.
+ */
 @EnableBinding(Sink.class)
-public class MessageProcessor {
+public class MessageProcessor extends OrderedEventProcessor<DataEvent<Integer, Review>> {
 
     private static final Logger LOG = LoggerFactory.getLogger(MessageProcessor.class);
 
+    // The dead-letter topic the Kafka binder uses for the input binding, error.destination.group unless dlqName is set
+    private static final String KAFKA_DLQ_NAME = "${spring.cloud.stream.kafka.bindings.input.consumer.dlqName:" +
+            "error.${spring.cloud.stream.bindings.input.destination:input}.${spring.cloud.stream.bindings.input.group:anonymous}}";
+
     private final ReviewController controller;
 
     @Autowired
-    public MessageProcessor(ReviewController controller) {
+    public MessageProcessor(ReviewController controller,
+                            @Value("${spring.cloud.stream.bindings.input.consumer.maxAttempts:3}") int maxAttempts,
+                            @Value("${spring.cloud.stream.bindings.input.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+                            @Value("${spring.cloud.stream.bindings.input.consumer.backOffMaxInterval:10000}") long backOffMaxInterval,
+                            @Value("${app.review.events.max-in-flight:200}") int maxInFlight,
+                            StreamBridge streamBridge,
+                            @Value(KAFKA_DLQ_NAME) String kafkaDlqName) {
+        super(maxAttempts, Duration.ofMillis(backOffInitialInterval), Duration.ofMillis(backOffMaxInterval), maxInFlight,
+                streamBridge, kafkaDlqName);
         this.controller = controller;
     }
 
     @StreamListener(Sink.INPUT)
-    public void process(DataEvent<Integer, Review> event) {
+    public void process(Message<DataEvent<Integer, Review>> message) {
+        LOG.info("Process message created at {}...", message.getPayload().getEventCreatedAt());
+        receive(message);
+    }
 
-        LOG.info("Process message created at {}...", event.getEventCreatedAt());
+    @Override
+    protected boolean isBatched(DataEvent<Integer, Review> event) {
+        return event.getEventType() == DataEvent.Type.CREATE;
+    }
+
+    @Override
+    protected Mono<?> write(DataEvent<Integer, Review> event) {
 
         switch (event.getEventType()) {
 
             case CREATE:
                 Review review = event.getData();
                 LOG.info("Create review with ID: {}/{}", review.getProductId(), review.getReviewId());
-                controller.createReview(review);
-                break;
+                // A new entity for each attempt, a failed JPA batch may leave its generated id on the entity
+                return Mono.defer(() -> controller.createReviewInBatch(review));
 
             case DELETE:
                 int productId = event.getKey();
                 LOG.info("Delete reviews with productID: {}", productId);
-                controller.deleteReviews(productId);
-                break;
+                return controller.deleteReviewsAsync(productId);
 
             default:
                 String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
                 LOG.warn(errorMessage);
-                throw new EventProcessingException(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
         }
+    }
 
-        LOG.info("Message processing done!");
+    // Only CREATE events are batched
+    @Override
+    protected Mono<?> writeUnbatched(DataEvent<Integer, Review> event) {
+        Review review = event.getData();
+        LOG.info("Create review with ID: {}/{}", review.getProductId(), review.getReviewId());
+        return Mono.defer(() -> controller.createReviewAsync(review));
     }
 }
@@ -0,0 +1,22 @@
+package com.habeebcycle.microservice.core.review.messaging;
+
+import org.springframework.cloud.stream.annotation.Input;
+import org.springframework.cloud.stream.annotation.Output;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+
+/**
+ * The productIds whose reviews changed. Both bindings share one destination, and the input is consumed without
+ * a group so that every instance receives every change.
+ */
+public interface ReviewChangeChannels {
+
+    String OUTPUT = "reviewChangesOutput";
+    String INPUT = "reviewChangesInput";
+
+    @Output(OUTPUT)
+    MessageChannel reviewChangesOutput();
+
+    @Input(INPUT)
+    SubscribableChannel reviewChangesInput();
+}
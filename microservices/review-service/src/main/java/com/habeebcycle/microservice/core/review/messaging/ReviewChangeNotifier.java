@@ -0,0 +1,78 @@
+package com.habeebcycle.microservice.core.review.messaging;
+
+import com.habeebcycle.microservice.core.review.controller.ReviewCache;
+import com.habeebcycle.microservice.library.util.reactive.EmitFailureHandlers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.annotation.EnableBinding;
+import org.springframework.cloud.stream.annotation.StreamListener;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+@EnableBinding(ReviewChangeChannels.class)
+public class ReviewChangeNotifier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReviewChangeNotifier.class);
+
+    private final ReviewChangeChannels channels;
+    private final ReviewCache cache;
+    private final Sinks.Many<Integer> batchedChanges = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable batchedAnnouncer;
+
+    @Autowired
+    public ReviewChangeNotifier(ReviewChangeChannels channels, ReviewCache cache,
+                                @Value("${app.review.batch.size:50}") int batchSize,
+                                @Value("${app.review.batch.max-wait:10ms}") Duration maxWait) {
+        this.channels = channels;
+        this.cache = cache;
+        this.batchedAnnouncer = batchedChanges.asFlux()
+                .bufferTimeout(batchSize, maxWait)
+                .publishOn(Schedulers.boundedElastic())
+                .subscribe(productIds -> productIds.stream().distinct().forEach(this::announce));
+    }
+
+    /**
+     * Drops the cached reviews of the product on this instance and tells the other instances to do the same.
+     * A lost notification only leaves the other instances stale until their cache entries expire.
+     */
+    public void reviewsChanged(int productId) {
+        cache.invalidate(productId);
+        announce(productId);
+    }
+
+    /**
+     * Like reviewsChanged, for reviews written in batches. The changes are collected like the batches, in up to
+     * app.review.batch.size changes within app.review.batch.max-wait, and the other instances are told once per
+     * product of such a batch.
+     */
+    public void reviewsChangedInBatch(int productId) {
+        cache.invalidate(productId);
+        batchedChanges.emitNext(productId, EmitFailureHandlers.RETRY_NON_SERIALIZED);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        batchedAnnouncer.dispose();
+    }
+
+    private void announce(int productId) {
+        try {
+            channels.reviewChangesOutput().send(MessageBuilder.withPayload(productId).build());
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to announce the changed reviews of product {}: {}", productId, e.getMessage());
+        }
+    }
+
+    @StreamListener(ReviewChangeChannels.INPUT)
+    public void onReviewsChanged(int productId) {
+        LOG.debug("Reviews of product {} changed, drops them from the cache", productId);
+        cache.invalidate(productId);
+    }
+}
@@ -0,0 +1,21 @@
+package com.habeebcycle.microservice.core.review.persistence;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveReviewRepository extends R2dbcRepository<ReviewEntity, Integer> {
+
+    Flux<ReviewEntity> findByProductId(int productId);
+
+    Flux<ReviewEntity> findByProductIdAndReviewIdGreaterThanOrderByReviewId(int productId, int reviewId, Pageable pageable);
+
+    Flux<ReviewEntity> findByProductIdOrderByReviewId(int productId);
+
+    @Modifying
+    @Query("DELETE FROM reviews WHERE product_id = :productId")
+    Mono<Integer> deleteByProductId(int productId);
+}
@@ -1,5 +1,8 @@
 package com.habeebcycle.microservice.core.review.persistence;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 import javax.persistence.*;
 
 @Entity
@@ -7,11 +10,25 @@ import javax.persistence.*;
         indexes = { @Index(name = "reviews_unique_idx", unique = true, columnList = "productId,reviewId") })
 public class ReviewEntity {
 
-    @Id @GeneratedValue
+    public static final String ID_TABLE = "hibernate_sequence";
+    public static final String ID_BLOCK_SIZE = "50";
+
+    /*
+        Hands out ids in blocks of 50 so that inserts can be batched, a plain @GeneratedValue reads the sequence per
+        insert. The blocks are claimed from a table on every database, as the r2dbc mode claims them the same way.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "review_id")
+    @GenericGenerator(name = "review_id", strategy = "enhanced-sequence", parameters = {
+            @Parameter(name = "sequence_name", value = ID_TABLE),
+            @Parameter(name = "increment_size", value = ID_BLOCK_SIZE),
+            @Parameter(name = "optimizer", value = "pooled-lo"),
+            @Parameter(name = "force_table_use", value = "true")})
     private int id;
 
+    // A wrapper like the other services, so that JPA and R2DBC both start new entities at version 0
     @Version
-    private int version;
+    private Integer version;
 
     private int productId;
     private int reviewId;
@@ -38,11 +55,11 @@ public class ReviewEntity {
         this.id = id;
     }
 
-    public int getVersion() {
+    public Integer getVersion() {
         return version;
     }
 
-    public void setVersion(int version) {
+    public void setVersion(Integer version) {
         this.version = version;
     }
 
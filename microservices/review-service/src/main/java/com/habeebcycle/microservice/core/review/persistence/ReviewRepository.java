@@ -1,6 +1,11 @@
 package com.habeebcycle.microservice.core.review.persistence;
 
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
@@ -9,4 +14,26 @@ public interface ReviewRepository extends JpaRepository<ReviewEntity, Integer> {
 
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int productId);
+
+    // Reads straight into API objects that Hibernate neither manages nor snapshots, the caller sets the service address
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.habeebcycle.microservice.library.api.core.review.Review(" +
+            "r.productId, r.reviewId, r.author, r.subject, r.content, '') " +
+            "FROM ReviewEntity r WHERE r.productId = :productId")
+    List<Review> findReviewsByProductId(@Param("productId") int productId);
+
+    // A keyset page, the (productId, reviewId) unique index serves both the filter and the order
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdAndReviewIdGreaterThanOrderByReviewId(int productId, int reviewId, Pageable pageable);
+
+    /**
+     * Deletes the reviews of a product in a single statement, without loading them or checking their versions.
+     *
+     * @param productId - the product whose reviews are deleted
+     * @return the number of reviews removed
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM ReviewEntity r WHERE r.productId = :productId")
+    int deleteByProductId(@Param("productId") int productId);
 }
@@ -0,0 +1,18 @@
+-- reviews_unique_idx serves the product lookups, the keyset pages ordered by review_id and the product deletes
+CREATE TABLE reviews (
+    id INT PRIMARY KEY,
+    version INT NOT NULL,
+    product_id INT NOT NULL,
+    review_id INT NOT NULL,
+    author VARCHAR(255),
+    subject VARCHAR(255),
+    content VARCHAR(255),
+    CONSTRAINT reviews_unique_idx UNIQUE (product_id, review_id)
+) ENGINE = InnoDB;
+
+-- Review ids are claimed from this table in blocks of 50, by Hibernate in the JPA mode and by R2dbcConfig in the r2dbc mode
+CREATE TABLE hibernate_sequence (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO hibernate_sequence VALUES (1);
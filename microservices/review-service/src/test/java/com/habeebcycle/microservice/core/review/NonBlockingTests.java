@@ -0,0 +1,117 @@
+package com.habeebcycle.microservice.core.review;
+
+import com.habeebcycle.microservice.core.review.controller.ReviewCache;
+import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
+import com.habeebcycle.microservice.core.review.persistence.ReviewRepository;
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+	BlockHound can not be uninstalled once installed, so these tests are tagged and run by their own surefire
+	execution, in a JVM of their own, instead of instrumenting every other test class.
+ */
+@Tag("blockhound")
+@SpringBootTest(
+		webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = {"spring.datasource.url=jdbc:h2:mem:review-db", "eureka.client.enabled=false",
+		"spring.cloud.config.enabled=false"}
+)
+class NonBlockingTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private ReviewRepository repository;
+
+	@Autowired
+	private ReviewCache cache;
+
+
+	/*
+		Fails any request that blocks a Netty event loop or another non-blocking thread. The in-memory H2
+		database never waits on a socket like the MySQL driver does, so its statement execution is marked
+		as blocking to make JDBC calls visible.
+	 */
+	@BeforeAll
+	static void installBlockHound() {
+		BlockHound.install(builder -> builder
+				.markAsBlocking("org.h2.jdbc.JdbcPreparedStatement", "executeQuery", "()Ljava/sql/ResultSet;")
+				.markAsBlocking("org.h2.jdbc.JdbcPreparedStatement", "executeUpdate", "()I"));
+	}
+
+	@BeforeEach
+	void setupDb() {
+		repository.deleteAll();
+		cache.invalidateAll();
+
+		int productId = 1;
+		IntStream.rangeClosed(1, 3).forEach(reviewId ->
+				repository.save(new ReviewEntity(productId, reviewId, "a", "s", "c")));
+	}
+
+	@Test
+	void blockingCallDetectedTest() {
+
+		StepVerifier.create(Mono.delay(Duration.ofMillis(1), Schedulers.parallel())
+						.doOnNext(tick -> repository.findByProductId(1)))
+				.expectError(BlockingOperationError.class)
+				.verify(Duration.ofSeconds(5));
+	}
+
+	@Test
+	void getReviewsDoesNotBlockTest() {
+
+		client.get()
+				.uri("/review?productId=1")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(3);
+
+		client.get()
+				.uri("/review/page?productId=1&after=1&limit=1")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].reviewId").isEqualTo(2);
+	}
+
+	@Test
+	void streamReviewsDoesNotBlockTest() {
+
+		List<Integer> reviewIds = client.get()
+				.uri("/review/stream?productId=1")
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(Review.class)
+				.getResponseBody()
+				.map(Review::getReviewId)
+				.collectList()
+				.block();
+
+		assertEquals(List.of(1, 2, 3), reviewIds);
+	}
+}
@@ -1,12 +1,20 @@
 package com.habeebcycle.microservice.core.review;
 
+import com.habeebcycle.microservice.core.review.controller.ReviewCache;
+import com.habeebcycle.microservice.core.review.messaging.ReviewChangeChannels;
+import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
 import com.habeebcycle.microservice.core.review.persistence.ReviewRepository;
 import com.habeebcycle.microservice.library.api.core.review.Review;
 import com.habeebcycle.microservice.library.api.event.DataEvent;
 import com.habeebcycle.microservice.library.util.exceptions.BadRequestException;
 import com.habeebcycle.microservice.library.util.exceptions.InvalidInputException;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.stream.messaging.Sink;
@@ -14,9 +22,20 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.integration.channel.AbstractMessageChannel;
 import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.messaging.support.GenericMessage;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(
@@ -35,6 +54,15 @@ class ReviewServiceApplicationTests {
 	@Autowired
 	private Sink channels;
 
+	@Autowired
+	private ReviewChangeChannels changeChannels;
+
+	@Autowired
+	private ReviewCache cache;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	private AbstractMessageChannel input = null;
 
 
@@ -42,6 +70,7 @@ class ReviewServiceApplicationTests {
 	void setupDb() {
 		input = (AbstractMessageChannel) channels.input();
 		repository.deleteAll();
+		cache.invalidateAll();
 
 		assertEquals(0, repository.count());
 		assertNotNull(input);
@@ -68,6 +97,85 @@ class ReviewServiceApplicationTests {
 				.jsonPath("$[2].reviewId").isEqualTo(3);
 	}
 
+	@Test
+	void cachedReviewsTest() {
+
+		int productId = 1;
+		sendCreateReviewEvent(productId, 1);
+
+		getAndVerifyReviewsByProductId(productId, HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(1);
+
+		// Written by another instance, only its change notification reaches this one
+		repository.save(new ReviewEntity(productId, 2, "a", "s", "c"));
+		getAndVerifyReviewsByProductId(productId, HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(1);
+
+		changeChannels.reviewChangesInput().send(new GenericMessage<>(productId));
+		getAndVerifyReviewsByProductId(productId, HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(2);
+
+		sendCreateReviewEvent(productId, 3);
+		getAndVerifyReviewsByProductId(productId, HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[2].serviceAddress").isNotEmpty();
+
+		sendDeleteReviewEvent(productId);
+		getAndVerifyReviewsByProductId(productId, HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(0);
+
+		assertTrue(meterRegistry.get("cache.gets").tag("cache", "reviews").tag("result", "hit").functionCounter().count() > 0);
+	}
+
+	@Test
+	void getReviewsPageTest() {
+
+		int productId = 1;
+		IntStream.of(4, 2, 5, 1, 3).forEach(reviewId -> sendCreateReviewEvent(productId, reviewId));
+
+		getAndVerifyReviewsByProductId("/page?productId=" + productId + "&limit=2", HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].reviewId").isEqualTo(1)
+				.jsonPath("$[1].reviewId").isEqualTo(2);
+
+		getAndVerifyReviewsByProductId("/page?productId=" + productId + "&after=2&limit=2", HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].reviewId").isEqualTo(3)
+				.jsonPath("$[1].reviewId").isEqualTo(4);
+
+		getAndVerifyReviewsByProductId("/page?productId=" + productId + "&after=4&limit=2", HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].reviewId").isEqualTo(5);
+
+		getAndVerifyReviewsByProductId("/page?productId=" + productId + "&after=5", HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(0);
+
+		getAndVerifyReviewsByProductId("/page?productId=" + productId + "&limit=0", HttpStatus.UNPROCESSABLE_ENTITY)
+				.jsonPath("$.message").isEqualTo("Invalid limit: 0");
+	}
+
+	@Test
+	void streamReviewsTest() {
+
+		int productId = 1;
+		IntStream.of(4, 2, 5, 1, 3).forEach(reviewId -> sendCreateReviewEvent(productId, reviewId));
+		sendCreateReviewEvent(2, 1);
+
+		List<Integer> reviewIds = client.get()
+				.uri("/review/stream?productId=" + productId)
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+				.returnResult(Review.class)
+				.getResponseBody()
+				.map(Review::getReviewId)
+				.collectList()
+				.block();
+
+		assertEquals(List.of(1, 2, 3, 4, 5), reviewIds);
+	}
+
 	@Test
 	void duplicateErrorTest() {
 
@@ -95,6 +203,59 @@ class ReviewServiceApplicationTests {
 		assertEquals(1, repository.count());
 	}
 
+	@Test
+	void concurrentCreateEventsTest() throws InterruptedException {
+
+		int productId = 1;
+		ExecutorService executor = Executors.newFixedThreadPool(10);
+
+		// Review 1 is sent twice, only that event should fail
+		List<Future<?>> results = IntStream.rangeClosed(0, 20)
+				.mapToObj(i -> executor.submit(() -> sendCreateReviewEvent(productId, Math.max(i, 1))))
+				.collect(Collectors.toList());
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		long duplicates = results.stream().filter(result -> {
+			try {
+				result.get();
+				return false;
+			} catch (ExecutionException | InterruptedException e) {
+				assertTrue(e.getCause() instanceof MessagingException);
+				assertEquals("Duplicate key, Product Id: 1, Review Id: 1", e.getCause().getCause().getMessage());
+				return true;
+			}
+		}).count();
+
+		assertEquals(1, duplicates);
+		assertEquals(20, repository.findByProductId(productId).size());
+	}
+
+	@Test
+	void acknowledgedEventsTest() throws IOException {
+
+		int productId = 1;
+		Channel channel = Mockito.mock(Channel.class);
+
+		// The events are handed over without waiting, the delete still runs after the creates sent before it
+		sendAcknowledgedEvent(channel, 1, createReviewEvent(productId, 1));
+		sendAcknowledgedEvent(channel, 2, createReviewEvent(productId, 2));
+		sendAcknowledgedEvent(channel, 3, new DataEvent<>(DataEvent.Type.DELETE, productId, null));
+		sendAcknowledgedEvent(channel, 4, createReviewEvent(productId, 3));
+		sendAcknowledgedEvent(channel, 5, createReviewEvent(productId, 3));
+
+		InOrder acknowledged = Mockito.inOrder(channel);
+		acknowledged.verify(channel, Mockito.timeout(5000)).basicAck(1, false);
+		acknowledged.verify(channel, Mockito.timeout(5000)).basicAck(2, false);
+		acknowledged.verify(channel, Mockito.timeout(5000)).basicAck(3, false);
+		Mockito.verify(channel, Mockito.timeout(5000)).basicAck(4, false);
+		Mockito.verify(channel, Mockito.timeout(5000)).basicNack(5, false, false);
+
+		List<ReviewEntity> reviews = repository.findByProductId(productId);
+		assertEquals(1, reviews.size());
+		assertEquals(3, reviews.get(0).getReviewId());
+	}
+
 	@Test
 	void invalidCreateIdTest() {
 		int productId = -101;
@@ -188,9 +349,20 @@ class ReviewServiceApplicationTests {
 	}
 
 	private void sendCreateReviewEvent(int productId, int reviewId) {
+		input.send(new GenericMessage<>(createReviewEvent(productId, reviewId)));
+	}
+
+	private DataEvent<Integer, Review> createReviewEvent(int productId, int reviewId) {
 		Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
-		DataEvent<Integer, Review> event = new DataEvent<>(DataEvent.Type.CREATE, productId, review);
-		input.send(new GenericMessage<>(event));
+		return new DataEvent<>(DataEvent.Type.CREATE, productId, review);
+	}
+
+	// Delivered like the RabbitMQ binder does with manual acknowledgement
+	private void sendAcknowledgedEvent(Channel channel, long deliveryTag, DataEvent<Integer, Review> event) {
+		input.send(MessageBuilder.withPayload(event)
+				.setHeader(AmqpHeaders.CHANNEL, channel)
+				.setHeader(AmqpHeaders.DELIVERY_TAG, deliveryTag)
+				.build());
 	}
 
 	private void sendDeleteReviewEvent(int productId) {
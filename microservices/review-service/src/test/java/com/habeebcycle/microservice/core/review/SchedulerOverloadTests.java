@@ -0,0 +1,88 @@
+package com.habeebcycle.microservice.core.review;
+
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A jdbcScheduler with one thread and no queue, so a single running task saturates it
+@SpringBootTest(
+		webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = {"spring.datasource.url=jdbc:h2:mem:review-db-overload", "spring.datasource.maximum-pool-size=1",
+				"app.jdbc-scheduler.queue-capacity=0", "eureka.client.enabled=false", "spring.cloud.config.enabled=false"}
+)
+class SchedulerOverloadTests {
+
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	@Qualifier("jdbcScheduler")
+	private Scheduler jdbcScheduler;
+
+	@Autowired
+	private HikariDataSource dataSource;
+
+	@Test
+	void overloadedSchedulerReturnsServiceUnavailableTest() throws InterruptedException {
+
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		jdbcScheduler.schedule(() -> {
+			started.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		try {
+			getReviews(HttpStatus.SERVICE_UNAVAILABLE)
+					.jsonPath("$.message").isEqualTo("Review service is overloaded, please retry later");
+		} finally {
+			release.countDown();
+		}
+
+		getReviews(HttpStatus.OK)
+				.jsonPath("$.length()").isEqualTo(0);
+	}
+
+	// The stream completes on the only scheduler thread, so releasing its cursor there is rejected
+	@Test
+	void streamReleasesConnectionOnFullSchedulerTest() throws InterruptedException {
+		client.get()
+				.uri("/review/stream?productId=1")
+				.accept(MediaType.APPLICATION_NDJSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBodyList(Review.class).hasSize(0);
+
+		for (int i = 0; i < 50 && dataSource.getHikariPoolMXBean().getActiveConnections() > 0; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(0, dataSource.getHikariPoolMXBean().getActiveConnections());
+	}
+
+	private WebTestClient.BodyContentSpec getReviews(HttpStatus expectedStatus) {
+		return client.get()
+				.uri("/review?productId=1")
+				.accept(MediaType.APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectBody();
+	}
+}
@@ -0,0 +1,115 @@
+package com.habeebcycle.microservice.core.review.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcSchedulerFactoryTests {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private JdbcSchedulerFactory factory;
+
+    @AfterEach
+    void shutdown() {
+        if (factory != null) factory.shutdown();
+    }
+
+    @Test
+    void rejectsWhenQueueIsFullTest() throws InterruptedException {
+        Scheduler scheduler = createFactory(false).create("test", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Mono<Boolean> running = Mono.fromCallable(() -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        }).subscribeOn(scheduler).cache();
+        running.subscribe();
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        Mono<String> queued = Mono.fromCallable(() -> "queued").subscribeOn(scheduler).cache();
+        queued.subscribe();
+
+        assertThrows(RejectedExecutionException.class,
+                () -> Mono.fromCallable(() -> "rejected").subscribeOn(scheduler).block(Duration.ofSeconds(10)));
+
+        assertEquals(1, registry.get("jdbc.scheduler.active").tag("name", "test").gauge().value());
+        assertEquals(1, registry.get("jdbc.scheduler.queued").tag("name", "test").gauge().value());
+        assertEquals(1, registry.get("jdbc.scheduler.rejected").tag("name", "test").counter().count());
+
+        release.countDown();
+        assertTrue(running.block(Duration.ofSeconds(10)));
+        assertEquals("queued", queued.block(Duration.ofSeconds(10)));
+
+        assertEquals(2, registry.get("jdbc.scheduler.wait").tag("name", "test").timer().count());
+        assertEquals(0, registry.get("jdbc.scheduler.queued").tag("name", "test").gauge().value());
+    }
+
+    @Test
+    void virtualThreadsFallBackTest() {
+        Scheduler scheduler = createFactory(true).create("virtual", 2);
+
+        String thread = Mono.fromCallable(() -> Thread.currentThread().getName())
+                .subscribeOn(scheduler)
+                .block(Duration.ofSeconds(10));
+
+        assertNotNull(thread);
+        if (Runtime.version().feature() < 21) assertTrue(thread.startsWith("virtual-"));
+    }
+
+    @Test
+    void threadPerTaskRunsAtMostConcurrencyTasksTest() throws InterruptedException {
+        // Starts a thread per task like the virtual thread executor, which this JDK may not have
+        ExecutorService threadPerTask = Executors.newCachedThreadPool();
+        JdbcSchedulerFactory.BoundedExecutor executor = new JdbcSchedulerFactory.BoundedExecutor(threadPerTask, 10, 2);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            });
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        assertEquals(2, executor.active());
+        assertEquals(3, executor.queued());
+
+        release.countDown();
+        threadPerTask.shutdown();
+        assertTrue(threadPerTask.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, executor.queued());
+    }
+
+    private JdbcSchedulerFactory createFactory(boolean virtualThreads) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("meterRegistry", registry));
+        factory = new JdbcSchedulerFactory(beanFactory.getBeanProvider(MeterRegistry.class), 1, virtualThreads);
+        return factory;
+    }
+}
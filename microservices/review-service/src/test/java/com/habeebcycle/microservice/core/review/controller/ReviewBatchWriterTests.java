@@ -0,0 +1,87 @@
+package com.habeebcycle.microservice.core.review.controller;
+
+import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
+import com.habeebcycle.microservice.core.review.persistence.ReviewRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {"spring.cloud.config.enabled=false"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ReviewBatchWriterTests {
+
+    private static final int BATCH_SIZE = 10;
+
+    @Autowired
+    private ReviewRepository repository;
+
+    private ReviewBatchWriter batchWriter;
+
+    private ReviewEntity savedEntity;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll();
+        savedEntity = repository.save(new ReviewEntity(1, 4, "a", "s", "c"));
+
+        // The batch only fills up when all the reviews are saved at once
+        batchWriter = new ReviewBatchWriter(repository, Schedulers.boundedElastic(), BATCH_SIZE, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchWriter.shutdown();
+    }
+
+    @Test
+    void partialFailureTest() {
+        List<ReviewEntity> reviews = newReviews(1);
+
+        // Review 1/4 exists, only its insert fails and the other reviews of the batch are kept
+        List<Integer> failed = Flux.fromIterable(reviews)
+                .flatMap(review -> batchWriter.save(review)
+                        .then(Mono.<Integer>empty())
+                        .onErrorResume(DataIntegrityViolationException.class, e -> Mono.just(review.getReviewId())))
+                .collectList()
+                .block();
+
+        assertEquals(List.of(4), failed);
+        assertEquals(reviewIds(), storedReviewIds(1));
+        assertEquals(0, reviews.get(3).getId());
+        assertEquals(savedEntity.getId(), repository.findByProductId(1).stream()
+                .filter(review -> review.getReviewId() == 4)
+                .findFirst().orElseThrow().getId());
+    }
+
+    private List<ReviewEntity> newReviews(int productId) {
+        return reviewIds().stream()
+                .map(reviewId -> new ReviewEntity(productId, reviewId, "a", "s", "c"))
+                .collect(Collectors.toList());
+    }
+
+    private List<Integer> reviewIds() {
+        return IntStream.rangeClosed(1, BATCH_SIZE).boxed().collect(Collectors.toList());
+    }
+
+    private List<Integer> storedReviewIds(int productId) {
+        return repository.findByProductId(productId).stream()
+                .map(ReviewEntity::getReviewId)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,63 @@
+package com.habeebcycle.microservice.core.review.controller;
+
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReviewCacheTests {
+
+    private final AtomicReference<String> replicaAuthor = new AtomicReference<>("before");
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+    private final Function<Integer, Flux<Review>> replica = productId ->
+            Flux.just(new Review(productId, 1, replicaAuthor.get(), "s", "c", ""));
+
+    @Test
+    void staleReplicaReadIsDroppedAgainTest() {
+        ReviewCache cache = createCache(Duration.ofMillis(200));
+
+        // The write is invalidated, but the following miss still reads the old review from the lagging replica
+        cache.invalidate(1);
+        assertEquals("before", author(cache));
+
+        replicaAuthor.set("after");
+        scheduler.advanceTimeBy(Duration.ofMillis(199));
+        assertEquals("before", author(cache));
+
+        scheduler.advanceTimeBy(Duration.ofMillis(1));
+        assertEquals("after", author(cache));
+    }
+
+    @Test
+    void invalidatedOnceWithoutReplicaTest() {
+        ReviewCache cache = createCache(Duration.ZERO);
+
+        cache.invalidate(1);
+        assertEquals("before", author(cache));
+
+        replicaAuthor.set("after");
+        scheduler.advanceTimeBy(Duration.ofMinutes(1));
+        assertEquals("before", author(cache));
+    }
+
+    private String author(ReviewCache cache) {
+        List<Review> reviews = cache.findByProductId(1, replica).collectList().block(Duration.ofSeconds(10));
+        assertNotNull(reviews);
+        return reviews.get(0).getAuthor();
+    }
+
+    private ReviewCache createCache(Duration reinvalidateAfter) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        return new ReviewCache(beanFactory.getBeanProvider(MeterRegistry.class), true, 100, 60, reinvalidateAfter, scheduler);
+    }
+}
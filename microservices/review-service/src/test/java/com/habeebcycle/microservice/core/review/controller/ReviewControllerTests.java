@@ -0,0 +1,50 @@
+package com.habeebcycle.microservice.core.review.controller;
+
+import com.habeebcycle.microservice.core.review.persistence.ReviewEntity;
+import com.habeebcycle.microservice.library.util.http.ServiceUtil;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReviewControllerTests {
+
+    private final ReviewRepoService repository = Mockito.mock(ReviewRepoService.class);
+
+    private final ReviewController controller = new ReviewController(repository, new ReviewMapperImpl(),
+            Mockito.mock(ServiceUtil.class), null, null, 100, Duration.ofMillis(500));
+
+    @Test
+    void slowStreamTimesOutTest() {
+        AtomicBoolean released = new AtomicBoolean();
+
+        // Every review arrives well within the timeout, the stream as a whole does not
+        Mockito.when(repository.streamByProductId(1)).thenReturn(Flux.range(1, 10)
+                .delayElements(Duration.ofMillis(100))
+                .map(reviewId -> new ReviewEntity(1, reviewId, "a", "s", "c"))
+                .doOnCancel(() -> released.set(true)));
+
+        StepVerifier.create(controller.streamReviews(1))
+                .thenConsumeWhile(review -> review.getReviewId() < 10)
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertTrue(released.get());
+    }
+
+    @Test
+    void streamWithinTimeoutTest() {
+        Mockito.when(repository.streamByProductId(1)).thenReturn(Flux.range(1, 3)
+                .map(reviewId -> new ReviewEntity(1, reviewId, "a", "s", "c")));
+
+        StepVerifier.create(controller.streamReviews(1))
+                .expectNextCount(3)
+                .verifyComplete();
+    }
+}
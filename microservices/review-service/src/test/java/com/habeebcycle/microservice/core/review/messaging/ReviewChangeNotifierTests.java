@@ -0,0 +1,49 @@
+package com.habeebcycle.microservice.core.review.messaging;
+
+import com.habeebcycle.microservice.core.review.controller.ReviewCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReviewChangeNotifierTests {
+
+    private final ReviewCache cache = Mockito.mock(ReviewCache.class);
+    private final MessageChannel output = Mockito.mock(MessageChannel.class);
+    private final ReviewChangeChannels channels = Mockito.mock(ReviewChangeChannels.class);
+
+    private ReviewChangeNotifier notifier;
+
+    @AfterEach
+    void tearDown() {
+        notifier.shutdown();
+    }
+
+    @Test
+    void batchedChangesAnnouncedOncePerProductTest() {
+        Mockito.when(channels.reviewChangesOutput()).thenReturn(output);
+        notifier = new ReviewChangeNotifier(channels, cache, 5, Duration.ofSeconds(10));
+
+        // A full batch is announced right away, once per product
+        List.of(1, 2, 1, 1, 2).forEach(notifier::reviewsChangedInBatch);
+
+        Mockito.verify(cache, Mockito.times(3)).invalidate(1);
+        Mockito.verify(cache, Mockito.times(2)).invalidate(2);
+        assertEquals(List.of(1, 2), announced(2));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> announced(int count) {
+        ArgumentCaptor<Message<?>> messages = ArgumentCaptor.forClass(Message.class);
+        Mockito.verify(output, Mockito.timeout(5000).times(count)).send(messages.capture());
+        return messages.getAllValues().stream().map(Message::getPayload).collect(Collectors.toList());
+    }
+}
@@ -1,7 +1,10 @@
 package com.habeebcycle.microservice.core.review.persistence;
 
+import com.habeebcycle.microservice.core.review.controller.ReviewMapper;
+import com.habeebcycle.microservice.library.api.core.review.Review;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -10,6 +13,8 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
@@ -22,6 +27,8 @@ public class PersistenceTests {
     @Autowired
     private ReviewRepository repository;
 
+    private final ReviewMapper mapper = Mappers.getMapper(ReviewMapper.class);
+
     private ReviewEntity savedEntity;
 
     @BeforeEach
@@ -63,6 +70,18 @@ public class PersistenceTests {
         assertFalse(repository.existsById(savedEntity.getId()));
     }
 
+    @Test
+    void deleteByProductIdTest() {
+        repository.save(new ReviewEntity(1, 3, "a", "s", "c"));
+        repository.save(new ReviewEntity(2, 2, "a", "s", "c"));
+
+        assertEquals(2, repository.deleteByProductId(1));
+
+        assertThat(repository.findByProductId(1), hasSize(0));
+        assertEquals(1, repository.count());
+        assertEquals(0, repository.deleteByProductId(1));
+    }
+
     @Test
     void getByProductIdTest() {
         List<ReviewEntity> entityList = repository.findByProductId(savedEntity.getProductId());
@@ -71,6 +90,42 @@ public class PersistenceTests {
         assertEqualsReview(savedEntity, entityList.get(0));
     }
 
+    @Test
+    void getReviewsByProductIdTest() {
+        List<Review> reviews = repository.findReviewsByProductId(savedEntity.getProductId());
+
+        assertThat(reviews, hasSize(1));
+        assertEquals(savedEntity.getReviewId(), reviews.get(0).getReviewId());
+        assertEquals(savedEntity.getAuthor(), reviews.get(0).getAuthor());
+        assertEquals(savedEntity.getSubject(), reviews.get(0).getSubject());
+        assertEquals(savedEntity.getContent(), reviews.get(0).getContent());
+    }
+
+    @Test
+    void getReviewsByProductIdMatchesEntitiesTest() {
+        repository.saveAll(IntStream.range(3, 10)
+                .mapToObj(reviewId -> new ReviewEntity(1, reviewId, "a" + reviewId, "s" + reviewId, "c" + reviewId))
+                .collect(Collectors.toList()));
+        repository.save(new ReviewEntity(2, 1, "a", "s", "c"));
+
+        // The projection reads the same fields the mapper copies from the entities, the service address is left empty
+        List<Review> entities = mapper.entityListToApiList(repository.findByProductId(1));
+        List<Review> projections = repository.findReviewsByProductId(1);
+        assertThat(projections, hasSize(8));
+        assertThat(entities, hasSize(8));
+
+        for (Review projection : projections) {
+            Review entity = entities.stream()
+                    .filter(review -> review.getReviewId() == projection.getReviewId())
+                    .findFirst().orElseThrow();
+            assertEquals(entity.getProductId(), projection.getProductId());
+            assertEquals(entity.getAuthor(),    projection.getAuthor());
+            assertEquals(entity.getSubject(),   projection.getSubject());
+            assertEquals(entity.getContent(),   projection.getContent());
+            assertEquals("",                    projection.getServiceAddress());
+        }
+    }
+
     @Test
     public void duplicateErrorTest() {
         ReviewEntity entity = new ReviewEntity(1, 2, "a", "s", "c");
@@ -0,0 +1,101 @@
+package com.habeebcycle.microservice.core.review.persistence;
+
+import com.habeebcycle.microservice.core.review.controller.ReviewMapper;
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Reads the 1000 reviews of a product as entities mapped to the API model and as Review projections, and compares
+ * the bytes allocated and the time per query. Tagged "benchmark", see the benchmark profile in the pom.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = {"spring.cloud.config.enabled=false"})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ProjectionBenchmarkTests {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProjectionBenchmarkTests.class);
+
+    private static final int REVIEWS = 1000;
+    private static final int WARMUP_QUERIES = 100;
+    private static final int QUERIES = 200;
+
+    private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final ReviewMapper mapper = Mappers.getMapper(ReviewMapper.class);
+
+    @Autowired
+    private ReviewRepository repository;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll();
+        repository.saveAll(IntStream.rangeClosed(1, REVIEWS)
+                .mapToObj(reviewId -> new ReviewEntity(1, reviewId, "a", "s", "c"))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    void projectionBenchmark() {
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "The JVM does not count the bytes allocated per thread");
+
+        QueryCost entities = measure(() -> mapper.entityListToApiList(repository.findByProductId(1)));
+        QueryCost projections = measure(() -> repository.findReviewsByProductId(1));
+        LOG.info("{} reviews as entities: {}", REVIEWS, entities);
+        LOG.info("{} reviews as projections: {}", REVIEWS, projections);
+
+        assertTrue(projections.bytes < entities.bytes);
+    }
+
+    // Averaged over the measured queries, every result is checked so none of the queries can be optimised away
+    private QueryCost measure(Supplier<List<Review>> query) {
+        for (int i = 0; i < WARMUP_QUERIES; i++) {
+            assertEquals(REVIEWS, query.get().size());
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            assertEquals(REVIEWS, query.get().size());
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        return new QueryCost(bytes / QUERIES, nanos / QUERIES);
+    }
+
+    private static class QueryCost {
+
+        private final long bytes;
+        private final long nanos;
+
+        QueryCost(long bytes, long nanos) {
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return bytes + " bytes, " + nanos / 1000 + " us per query";
+        }
+    }
+}
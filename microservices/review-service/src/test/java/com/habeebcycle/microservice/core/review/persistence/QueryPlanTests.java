@@ -0,0 +1,145 @@
+package com.habeebcycle.microservice.core.review.persistence;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Explains the statements that the repository actually sends, on the MySQL version of docker-compose migrated by the
+ * Flyway scripts, so that a change to the entity, a query or the migrations cannot turn a lookup into a full table
+ * scan. The plans come from the MySQL optimizer itself, an emulation like H2 in MySQL mode plans the queries its own
+ * way. The tests are skipped where Docker is not available.
+ */
+@DataJpaTest(properties = {"spring.cloud.config.enabled=false",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+                "com.habeebcycle.microservice.core.review.persistence.QueryPlanTests$RecordingStatementInspector"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+public class QueryPlanTests {
+
+    @Container
+    private static final MySQLContainer<?> MYSQL = new MySQLContainer<>("mysql:5.7");
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    private ReviewRepository repository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", MYSQL::getJdbcUrl);
+        registry.add("spring.datasource.username", MYSQL::getUsername);
+        registry.add("spring.datasource.password", MYSQL::getPassword);
+    }
+
+    // Ten reviews for each of a hundred products, so that the optimizer has a reason to prefer the indexes
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll();
+        repository.saveAll(IntStream.rangeClosed(1, 1000)
+                .mapToObj(i -> new ReviewEntity(i % 100, i, "a", "s", "c"))
+                .collect(Collectors.toList()));
+        jdbcTemplate.execute("ANALYZE TABLE reviews");
+        STATEMENTS.clear();
+    }
+
+    @Test
+    void findByProductIdPlanTest() {
+        assertThat(repository.findByProductId(1), hasSize(10));
+        assertUsesIndex(lastStatement(), "reviews_unique_idx");
+
+        assertThat(repository.findReviewsByProductId(1), hasSize(10));
+        assertUsesIndex(lastStatement(), "reviews_unique_idx");
+    }
+
+    @Test
+    void pageByProductIdPlanTest() {
+        assertThat(repository.findByProductIdAndReviewIdGreaterThanOrderByReviewId(1, 11, PageRequest.of(0, 5)), hasSize(5));
+
+        // The keyset condition is a range of the index, which is already in review_id order
+        Map<String, Object> plan = assertUsesIndex(lastStatement(), "reviews_unique_idx");
+        assertEquals("range", plan.get("type"));
+        assertThat(String.valueOf(plan.get("Extra")), not(containsString("filesort")));
+    }
+
+    @Test
+    void deleteByProductIdPlanTest() {
+        assertEquals(10, repository.deleteByProductId(1));
+        assertUsesIndex(lastStatement(), "reviews_unique_idx");
+    }
+
+    @Test
+    void updateByIdPlanTest() {
+        ReviewEntity entity = repository.findByProductId(1).get(0);
+        assertUsesIndex(lastStatement(), "reviews_unique_idx");
+
+        entity.setAuthor("a2");
+        repository.save(entity);
+        STATEMENTS.stream()
+                .filter(sql -> sql.startsWith("update reviews"))
+                .forEach(sql -> assertUsesIndex(sql, "PRIMARY"));
+        STATEMENTS.stream()
+                .filter(sql -> sql.startsWith("select") && sql.contains("where"))
+                .forEach(sql -> assertNotScanned(sql, explain(sql)));
+    }
+
+    private String lastStatement() {
+        assertFalse(STATEMENTS.isEmpty(), "No statement was recorded");
+        return STATEMENTS.get(STATEMENTS.size() - 1);
+    }
+
+    private Map<String, Object> assertUsesIndex(String sql, String index) {
+        Map<String, Object> plan = explain(sql);
+        assertNotScanned(sql, plan);
+        assertEquals(index, plan.get("key"), "Index used by " + sql);
+        return plan;
+    }
+
+    private void assertNotScanned(String sql, Map<String, Object> plan) {
+        assertNotEquals("ALL", plan.get("type"), "Access type of " + sql);
+    }
+
+    // Binds 1 to every parameter, the plan only depends on which columns are compared. The statements only read
+    // the reviews table, so the plan has a single row
+    private Map<String, Object> explain(String sql) {
+        Object[] args = sql.chars().filter(c -> c == '?').mapToObj(c -> 1).toArray();
+        List<Map<String, Object>> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, args);
+        assertThat("Plan of " + sql, plan, hasSize(1));
+        return plan.get(0);
+    }
+
+    public static class RecordingStatementInspector implements StatementInspector {
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql.trim().toLowerCase());
+            return sql;
+        }
+    }
+}
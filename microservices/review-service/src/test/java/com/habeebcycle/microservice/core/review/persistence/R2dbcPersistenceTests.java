@@ -0,0 +1,175 @@
+package com.habeebcycle.microservice.core.review.persistence;
+
+import com.habeebcycle.microservice.core.review.controller.ReviewController;
+import com.habeebcycle.microservice.library.api.core.review.Review;
+import com.habeebcycle.microservice.library.util.exceptions.BadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"spring.r2dbc.url=r2dbc:h2:mem:///review-db-r2dbc?options=DB_CLOSE_DELAY=-1",
+                "spring.r2dbc.username=sa", "spring.flyway.url=jdbc:h2:mem:review-db-r2dbc;DB_CLOSE_DELAY=-1",
+                "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration",
+                "server.port=0", "eureka.client.enabled=false", "spring.cloud.config.enabled=false"}
+)
+@ActiveProfiles("r2dbc")
+public class R2dbcPersistenceTests {
+
+    @Autowired
+    private ReactiveReviewRepository repository;
+
+    @Autowired
+    private ReviewController controller;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private ReviewEntity savedEntity;
+
+    @BeforeEach
+    void setupDb() {
+        StepVerifier.create(repository.deleteAll()).verifyComplete();
+
+        ReviewEntity entity = new ReviewEntity(1, 2, "a", "s", "c");
+        StepVerifier.create(repository.save(entity))
+                .expectNextMatches(e -> {
+                    savedEntity = e;
+                    return e.getId() > 0;
+                })
+                .verifyComplete();
+
+        StepVerifier.create(repository.findById(savedEntity.getId()))
+                .expectNextMatches(e -> areReviewEqual(savedEntity, e))
+                .verifyComplete();
+    }
+
+    @Test
+    void createTest() {
+        ReviewEntity newEntity = new ReviewEntity(1, 3, "a", "s", "c");
+        StepVerifier.create(repository.save(newEntity)).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(repository.findById(newEntity.getId()))
+                .expectNextMatches(e -> areReviewEqual(newEntity, e))
+                .verifyComplete();
+
+        StepVerifier.create(repository.count()).expectNext(2L).verifyComplete();
+    }
+
+    @Test
+    void updateTest() {
+        assertEquals(0, savedEntity.getVersion());
+        savedEntity.setAuthor("a2");
+        StepVerifier.create(repository.save(savedEntity)).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(repository.findById(savedEntity.getId()))
+                .expectNextMatches(e -> e.getVersion() == 1 && e.getAuthor().equals("a2"))
+                .verifyComplete();
+    }
+
+    @Test
+    void getByProductIdTest() {
+        StepVerifier.create(repository.save(new ReviewEntity(2, 2, "a", "s", "c"))).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(repository.findByProductId(savedEntity.getProductId()))
+                .expectNextMatches(e -> areReviewEqual(savedEntity, e))
+                .verifyComplete();
+    }
+
+    @Test
+    void getPageByProductIdTest() {
+        StepVerifier.create(repository.save(new ReviewEntity(1, 4, "a", "s", "c"))).expectNextCount(1).verifyComplete();
+        StepVerifier.create(repository.save(new ReviewEntity(1, 3, "a", "s", "c"))).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(repository.findByProductIdAndReviewIdGreaterThanOrderByReviewId(1, 2, PageRequest.of(0, 1)))
+                .expectNextMatches(e -> e.getReviewId() == 3)
+                .verifyComplete();
+
+        StepVerifier.create(repository.findByProductIdOrderByReviewId(1).map(ReviewEntity::getReviewId))
+                .expectNext(2, 3, 4)
+                .verifyComplete();
+    }
+
+    @Test
+    void deleteByProductIdTest() {
+        StepVerifier.create(repository.save(new ReviewEntity(1, 3, "a", "s", "c"))).expectNextCount(1).verifyComplete();
+        StepVerifier.create(repository.save(new ReviewEntity(2, 2, "a", "s", "c"))).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(repository.deleteByProductId(1)).expectNext(2).verifyComplete();
+
+        StepVerifier.create(repository.findByProductId(1)).verifyComplete();
+        StepVerifier.create(repository.count()).expectNext(1L).verifyComplete();
+    }
+
+    @Test
+    void idsClaimedFromSequenceTableTest() {
+        List<ReviewEntity> saved = Flux.range(3, 60)
+                .concatMap(reviewId -> repository.save(new ReviewEntity(1, reviewId, "a", "s", "c")))
+                .collectList()
+                .block();
+        Long nextVal = databaseClient.sql("SELECT next_val FROM hibernate_sequence")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .block();
+
+        // Every id lies below next_val, so the blocks the JPA mode claims next cannot collide with them
+        assertNotNull(saved);
+        assertNotNull(nextVal);
+        assertEquals(60, saved.stream().mapToInt(ReviewEntity::getId).distinct().count());
+        assertTrue(saved.stream().allMatch(e -> e.getId() > 0 && e.getId() < nextVal));
+    }
+
+    @Test
+    void duplicateErrorTest() {
+        StepVerifier.create(repository.save(new ReviewEntity(1, 2, "a", "s", "c")))
+                .expectError(DataIntegrityViolationException.class)
+                .verify();
+
+        Review review = new Review(1, 2, "a", "s", "c", "SA");
+        BadRequestException error = assertThrows(BadRequestException.class, () -> controller.createReview(review));
+        assertEquals("Duplicate key, Product Id: 1, Review Id: 2", error.getMessage());
+    }
+
+    @Test
+    void optimisticLockErrorTest() {
+        ReviewEntity entity1 = repository.findById(savedEntity.getId()).block();
+        ReviewEntity entity2 = repository.findById(savedEntity.getId()).block();
+        assertNotNull(entity1);
+        assertNotNull(entity2);
+
+        entity1.setAuthor("a1");
+        StepVerifier.create(repository.save(entity1)).expectNextCount(1).verifyComplete();
+
+        entity2.setAuthor("a2");
+        StepVerifier.create(repository.save(entity2))
+                .expectError(OptimisticLockingFailureException.class)
+                .verify();
+
+        StepVerifier.create(repository.findById(savedEntity.getId()))
+                .expectNextMatches(e -> e.getVersion() == savedEntity.getVersion() + 1 && e.getAuthor().equals("a1"))
+                .verifyComplete();
+    }
+
+    private boolean areReviewEqual(ReviewEntity expectedEntity, ReviewEntity actualEntity) {
+        return (expectedEntity.getId() == actualEntity.getId())
+                && expectedEntity.getVersion().equals(actualEntity.getVersion())
+                && (expectedEntity.getProductId() == actualEntity.getProductId())
+                && (expectedEntity.getReviewId() == actualEntity.getReviewId())
+                && (expectedEntity.getAuthor().equals(actualEntity.getAuthor()))
+                && (expectedEntity.getSubject().equals(actualEntity.getSubject()))
+                && (expectedEntity.getContent().equals(actualEntity.getContent()));
+    }
+}
@@ -0,0 +1,82 @@
+package com.habeebcycle.microservice.core.review.persistence;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Both pools point at the same in-memory database, the tests tell them apart by their active connections
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {"spring.datasource.url=jdbc:h2:mem:review-routing", "spring.datasource.username=sa",
+                "app.datasource.replica.url=jdbc:h2:mem:review-routing",
+                "app.datasource.replica.lag-query=SELECT 0 AS Seconds_Behind_Master",
+                "server.port=0", "eureka.client.enabled=false", "spring.cloud.config.enabled=false"}
+)
+public class RoutingPersistenceTests {
+
+    @Autowired
+    private ReviewRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private HikariDataSource primary;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private HikariDataSource replica;
+
+    @Autowired
+    private HealthEndpoint healthEndpoint;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll();
+        repository.save(new ReviewEntity(1, 2, "a", "s", "c"));
+    }
+
+    @Test
+    void readOnlyTransactionUsesReplicaTest() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        readOnly.executeWithoutResult(status -> {
+            assertEquals(1, repository.findByProductId(1).size());
+            assertEquals(1, activeConnections(replica));
+            assertEquals(0, activeConnections(primary));
+        });
+    }
+
+    @Test
+    void writeTransactionUsesPrimaryTest() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            repository.saveAndFlush(new ReviewEntity(1, 3, "a", "s", "c"));
+            assertEquals(1, activeConnections(primary));
+            assertEquals(0, activeConnections(replica));
+        });
+
+        assertEquals(2, repository.findByProductId(1).size());
+    }
+
+    @Test
+    void healthTest() {
+        assertEquals(Status.UP, healthEndpoint.healthForPath("db", "primaryDataSource").getStatus());
+        assertEquals(Status.UP, healthEndpoint.healthForPath("db", "replicaDataSource").getStatus());
+        assertEquals(Status.UP, healthEndpoint.healthForPath("replicaLag").getStatus());
+    }
+
+    private static int activeConnections(HikariDataSource dataSource) {
+        return dataSource.getHikariPoolMXBean() == null ? 0 : dataSource.getHikariPoolMXBean().getActiveConnections();
+    }
+}
@@ -0,0 +1,128 @@
+package com.habeebcycle.microservice.library.util.http;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.habeebcycle.microservice.library.util.exceptions.InternalServerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Injects the faults asked for by the delay (in seconds) and faultPercent request parameters, enabled by setting
+ * app.fault-injection.enabled=true in the service that should fail, for resilience tests only. The faults only hit
+ * requests whose path matches one of the app.fault-injection.paths patterns, e.g. /product/{productId:[1-9]\d*},
+ * so that requests the controller rejects, like an invalid productId, are rejected right away. The delay is a timer,
+ * so the request waits without holding the event loop thread that the other requests share. An injected fault is
+ * answered by the GlobalExceptionHandler, so that its error body looks like any other error of the API.
+ *
+ *  Sample usage: curl $HOST:$PORT/product/123?delay=3&faultPercent=25
+ */
+@Component
+@ConditionalOnProperty(name = "app.fault-injection.enabled", havingValue = "true")
+public class FaultInjectionFilter implements WebFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FaultInjectionFilter.class);
+
+    private final List<PathPattern> paths;
+    private final GlobalExceptionHandler errors;
+    private final ObjectMapper mapper;
+
+    @Autowired
+    public FaultInjectionFilter(@Value("${app.fault-injection.paths}") String[] paths,
+                                GlobalExceptionHandler errors, ObjectMapper mapper) {
+        this.errors = errors;
+        this.mapper = mapper;
+        this.paths = Arrays.stream(paths)
+                .map(PathPatternParser.defaultInstance::parse)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+        if (paths.stream().noneMatch(pattern -> pattern.matches(path))) return chain.filter(exchange);
+
+        MultiValueMap<String, String> params = exchange.getRequest().getQueryParams();
+        Integer delay = getIntParam(params, "delay");
+        Integer faultPercent = getIntParam(params, "faultPercent");
+
+        // A malformed value is left for the controller to reject, without a fault
+        if (delay == null || faultPercent == null) return chain.filter(exchange);
+        if (delay <= 0 && faultPercent <= 0) return chain.filter(exchange);
+
+        return simulateDelay(delay)
+                .then(Mono.defer(() -> throwErrorIfBadLuck(faultPercent)))
+                .then(Mono.defer(() -> chain.filter(exchange)))
+                .onErrorResume(InternalServerException.class, e -> writeError(exchange, e));
+    }
+
+    private Mono<Void> simulateDelay(int delay) {
+        if (delay <= 0) return Mono.empty();
+
+        return Mono.delay(Duration.ofSeconds(delay))
+                .doOnSubscribe(s -> LOG.debug("Delaying for {} seconds...", delay))
+                .doOnNext(tick -> LOG.debug("Moving on..."))
+                .then();
+    }
+
+    private Mono<Void> throwErrorIfBadLuck(int faultPercent) {
+        if (faultPercent <= 0) return Mono.empty();
+
+        int randomThreshold = ThreadLocalRandom.current().nextInt(1, 101);
+        if (faultPercent < randomThreshold) {
+            LOG.debug("We got lucky, no error occurred, {} < {}", faultPercent, randomThreshold);
+            return Mono.empty();
+        }
+
+        LOG.debug("Bad luck, an error occurred, {} >= {}", faultPercent, randomThreshold);
+        return Mono.error(new InternalServerException("Something went wrong..."));
+    }
+
+    // The filter runs before the controller, so its errors do not reach the @RestControllerAdvice on their own
+    private Mono<Void> writeError(ServerWebExchange exchange, InternalServerException ex) {
+        HttpErrorInfo info = errors.handleInternalServerException(exchange.getRequest(), ex);
+        ServerHttpResponse response = exchange.getResponse();
+        if (response.isCommitted()) return Mono.error(ex);
+
+        byte[] body;
+        try {
+            body = mapper.writeValueAsBytes(info);
+        } catch (JsonProcessingException e) {
+            return Mono.error(ex);
+        }
+        response.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    // 0 if the parameter is missing, null if it is not an int
+    private Integer getIntParam(MultiValueMap<String, String> params, String name) {
+        String value = params.getFirst(name);
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.habeebcycle.microservice.library.util.exceptions.BadRequestException;
 import com.habeebcycle.microservice.library.util.exceptions.InternalServerException;
 import com.habeebcycle.microservice.library.util.exceptions.InvalidInputException;
 import com.habeebcycle.microservice.library.util.exceptions.NotFoundException;
+import com.habeebcycle.microservice.library.util.exceptions.ServiceUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -46,6 +47,13 @@ public class GlobalExceptionHandler {
         return createHttpErrorInfo(HttpStatus.INTERNAL_SERVER_ERROR, request, ex);
     }
 
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public @ResponseBody
+    HttpErrorInfo handleServiceUnavailableException(ServerHttpRequest request, Exception ex) {
+        return createHttpErrorInfo(HttpStatus.SERVICE_UNAVAILABLE, request, ex);
+    }
+
     private HttpErrorInfo createHttpErrorInfo(HttpStatus httpStatus, ServerHttpRequest request, Exception ex) {
         final String path = request.getPath().pathWithinApplication().value();
         final String message = ex.getMessage();
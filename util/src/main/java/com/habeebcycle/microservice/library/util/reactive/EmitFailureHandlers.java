@@ -0,0 +1,15 @@
+package com.habeebcycle.microservice.library.util.reactive;
+
+import reactor.core.publisher.Sinks;
+
+public final class EmitFailureHandlers {
+
+    /**
+     * For sinks that callers emit to from their own threads, retries until the concurrent emission is done.
+     */
+    public static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+            (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+    private EmitFailureHandlers() {
+    }
+}
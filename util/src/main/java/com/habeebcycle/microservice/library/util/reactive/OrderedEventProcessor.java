@@ -0,0 +1,341 @@
+package com.habeebcycle.microservice.library.util.reactive;
+
+import com.habeebcycle.microservice.library.util.exceptions.BadRequestException;
+import com.habeebcycle.microservice.library.util.exceptions.EventProcessingException;
+import com.habeebcycle.microservice.library.util.exceptions.InvalidInputException;
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Handles the events of an input binding in the order the consumer thread receives them. A batched event, like a
+ * CREATE that joins a bulk write, is started without waiting for it, so that many of them share a write. Any other
+ * event, like a DELETE, waits for the batched events before it and holds back the events after it, so an entity is
+ * never deleted before it is created. Subclasses only map the events to their writes.
+ *
+ * With RabbitMQ manual acknowledgement an event is acknowledged once it is written. With Kafka manual commits the
+ * offset of an event is committed once it and the events before it are written. Failures that may pass, like a lost
+ * database connection or an overloaded scheduler, are retried with the back-off of the binding, invalid events are
+ * not. An event that still fails is rejected to the RabbitMQ dead-letter queue. Kafka cannot reject a single record,
+ * there the event is published to the dead-letter topic of the binding, with the headers the Kafka binder sets on
+ * its own dead letters, before its offset is committed. At most maxInFlight events wait for their acknowledgement,
+ * then the consumer thread waits for one of them.
+ *
+ * Without manual acknowledgement the consumer thread waits for each event, so the binder retries and dead-letters
+ * a failed event itself. No two events are ever written at the same time then, so a batched event is written on its
+ * own with writeUnbatched instead of waiting out the max wait of a batch. Batching needs acknowledgeMode MANUAL with
+ * RabbitMQ, or autoCommitOffset false with Kafka.
+ *
+ * @param <E> the type of the event payloads
+ */
+public abstract class OrderedEventProcessor<E> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OrderedEventProcessor.class);
+
+    // The headers of the dead letters of the Kafka binder
+    private static final String X_ORIGINAL_TOPIC = "x-original-topic";
+    private static final String X_ORIGINAL_PARTITION = "x-original-partition";
+    private static final String X_ORIGINAL_OFFSET = "x-original-offset";
+    private static final String X_EXCEPTION_FQCN = "x-exception-fqcn";
+    private static final String X_EXCEPTION_MESSAGE = "x-exception-message";
+    private static final String X_EXCEPTION_STACKTRACE = "x-exception-stacktrace";
+
+    private final Retry retry;
+    private final Semaphore inFlight;
+    private final StreamBridge streamBridge;
+    private final String kafkaDlqName;
+
+    private final Sinks.Many<PendingEvent<E>> events = Sinks.many().unicast().onBackpressureBuffer();
+    private final Sinks.Many<PendingEvent<E>> acknowledgements = Sinks.many().unicast().onBackpressureBuffer();
+    private final Disposable handler;
+    private final Disposable acknowledger;
+
+    // Batched events that are not written yet
+    private final Set<PendingEvent<E>> pendingBatched = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param maxAttempts - the attempts of an event before it is rejected, as in the consumer properties of the binding
+     * @param backOffInitialInterval - the wait before the first retry
+     * @param backOffMaxInterval - the max wait between retries
+     * @param maxInFlight - the max number of events that wait for their acknowledgement
+     * @param streamBridge - publishes the failed Kafka events
+     * @param kafkaDlqName - the dead-letter topic of the binding, error.destination.group unless dlqName is set
+     */
+    protected OrderedEventProcessor(int maxAttempts, Duration backOffInitialInterval, Duration backOffMaxInterval,
+                                    int maxInFlight, StreamBridge streamBridge, String kafkaDlqName) {
+
+        this.retry = Retry.backoff(Math.max(maxAttempts - 1, 0), backOffInitialInterval)
+                .maxBackoff(backOffMaxInterval)
+                .filter(this::isRetryable)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+        this.inFlight = new Semaphore(maxInFlight);
+        this.streamBridge = streamBridge;
+        this.kafkaDlqName = kafkaDlqName;
+
+        this.handler = events.asFlux()
+                .concatMap(pending -> handle(pending)
+                        .onErrorResume(e -> {
+                            pending.failed(e);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+
+        // Acknowledges in the order of the events, a Kafka commit also commits the offsets before it
+        this.acknowledger = acknowledgements.asFlux()
+                .concatMap(pending -> pending.result.asMono()
+                        .doOnSuccess(done -> pending.acknowledgement.acknowledge())
+                        .onErrorResume(e -> {
+                            pending.acknowledgement.reject(e);
+                            return Mono.empty();
+                        })
+                        .doFinally(signal -> inFlight.release()))
+                .subscribe();
+    }
+
+    /**
+     * Whether later events may be handled before the event is written, like a CREATE that joins a batch.
+     */
+    protected abstract boolean isBatched(E event);
+
+    /**
+     * Maps the event to its write, called once per event. A retry subscribes to the returned Mono again, so whatever
+     * the write assigns when it is assembled, like the id of a new entity, is the same for every attempt. Events that
+     * are not batched are written after the batched events received before them.
+     */
+    protected abstract Mono<?> write(E event);
+
+    /**
+     * Maps a batched event to a write of its own, used for events without manual acknowledgement. Defaults to write.
+     */
+    protected Mono<?> writeUnbatched(E event) {
+        return write(event);
+    }
+
+    /**
+     * Whether the failed write of an event may succeed when retried.
+     */
+    protected boolean isRetryable(Throwable error) {
+        return !(error instanceof InvalidInputException
+                || error instanceof BadRequestException
+                || error instanceof EventProcessingException);
+    }
+
+    /**
+     * Hands the event over to be written, called by the StreamListener of the subclass.
+     */
+    public void receive(Message<? extends E> message) {
+
+        Acknowledgement acknowledgement = acknowledgementOf(message);
+        PendingEvent<E> pending = new PendingEvent<>(message.getPayload(), acknowledgement);
+
+        if (acknowledgement == null) {
+            events.emitNext(pending, EmitFailureHandlers.RETRY_NON_SERIALIZED);
+            pending.result.asMono().block();
+            LOG.info("Message processing done!");
+            return;
+        }
+
+        inFlight.acquireUninterruptibly();
+        acknowledgements.emitNext(pending, EmitFailureHandlers.RETRY_NON_SERIALIZED);
+        events.emitNext(pending, EmitFailureHandlers.RETRY_NON_SERIALIZED);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        handler.dispose();
+        acknowledger.dispose();
+    }
+
+    private Mono<Void> handle(PendingEvent<E> pending) {
+
+        // Without manual acknowledgement the binder retries the event, and the event is the only one being written
+        if (pending.acknowledgement == null) {
+            return writeOf(pending.event, isBatched(pending.event))
+                    .doOnSuccess(written -> pending.done())
+                    .then();
+        }
+
+        Mono<?> write = writeOf(pending.event, false).retryWhen(retry);
+        if (isBatched(pending.event)) {
+            pendingBatched.add(pending);
+            write.doFinally(signal -> pendingBatched.remove(pending))
+                    .subscribe(null, pending::failed, pending::done);
+            return Mono.empty();
+        }
+
+        // Other events are rare, one waits for all the batched events still being written instead of its own only
+        List<Mono<Void>> earlierBatched = pendingBatched.stream()
+                .map(batched -> batched.result.asMono().onErrorResume(e -> Mono.empty()))
+                .collect(Collectors.toList());
+        return Mono.when(earlierBatched)
+                .then(write)
+                .doOnSuccess(written -> pending.done())
+                .then();
+    }
+
+    private Mono<?> writeOf(E event, boolean unbatched) {
+        try {
+            return unbatched ? writeUnbatched(event) : write(event);
+        } catch (RuntimeException e) {
+            return Mono.error(e);
+        }
+    }
+
+    private Acknowledgement acknowledgementOf(Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        Long deliveryTag = headers.get(AmqpHeaders.DELIVERY_TAG, Long.class);
+        if (headers.containsKey(AmqpHeaders.CHANNEL) && deliveryTag != null) {
+            return new RabbitAcknowledgement(headers.get(AmqpHeaders.CHANNEL), deliveryTag);
+        }
+        if (headers.containsKey(KafkaHeaders.ACKNOWLEDGMENT)) {
+            return new KafkaAcknowledgement(message);
+        }
+        return null;
+    }
+
+    private interface Acknowledgement {
+
+        void acknowledge();
+
+        void reject(Throwable error);
+    }
+
+    private static class RabbitAcknowledgement implements Acknowledgement {
+
+        private final Channel channel;
+        private final long deliveryTag;
+
+        private RabbitAcknowledgement(Object channel, long deliveryTag) {
+            this.channel = (Channel) channel;
+            this.deliveryTag = deliveryTag;
+        }
+
+        @Override
+        public void acknowledge() {
+            try {
+                channel.basicAck(deliveryTag, false);
+                LOG.info("Message processing done!");
+            } catch (IOException e) {
+                LOG.warn("Failed to acknowledge message {}, it is delivered again: {}", deliveryTag, e.getMessage());
+            }
+        }
+
+        @Override
+        public void reject(Throwable error) {
+            LOG.warn("Rejects message {} to the dead-letter queue: {}", deliveryTag, error.getMessage());
+            try {
+                channel.basicNack(deliveryTag, false, false);
+            } catch (IOException e) {
+                LOG.warn("Failed to reject message {}, it is delivered again: {}", deliveryTag, e.getMessage());
+            }
+        }
+    }
+
+    // The listener container commits the offset on its consumer thread, at its next poll
+    private class KafkaAcknowledgement implements Acknowledgement {
+
+        private final Message<?> message;
+        private final Acknowledgment acknowledgment;
+
+        private KafkaAcknowledgement(Message<?> message) {
+            this.message = message;
+            this.acknowledgment = message.getHeaders().get(KafkaHeaders.ACKNOWLEDGMENT, Acknowledgment.class);
+        }
+
+        @Override
+        public void acknowledge() {
+            acknowledgment.acknowledge();
+            LOG.info("Message processing done!");
+        }
+
+        // The offset is committed anyway, it cannot be held back without holding back the events after it
+        @Override
+        public void reject(Throwable error) {
+            LOG.warn("Publishes a message to the dead-letter topic {}: {}", kafkaDlqName, error.toString());
+            try {
+                if (!streamBridge.send(kafkaDlqName, deadLetterOf(message, error))) {
+                    LOG.error("Failed to publish a message to the dead-letter topic {}, skips it: {}",
+                            kafkaDlqName, message.getPayload());
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Failed to publish a message to the dead-letter topic {}, skips it: {}",
+                        kafkaDlqName, message.getPayload(), e);
+            }
+            acknowledgment.acknowledge();
+        }
+    }
+
+    private static Message<?> deadLetterOf(Message<?> message, Throwable error) {
+        MessageHeaders headers = message.getHeaders();
+        StringWriter stackTrace = new StringWriter();
+        error.printStackTrace(new PrintWriter(stackTrace));
+
+        MessageBuilder<?> deadLetter = MessageBuilder.withPayload(message.getPayload())
+                .setHeader(X_EXCEPTION_FQCN, bytesOf(error.getClass().getName()))
+                .setHeader(X_EXCEPTION_MESSAGE, bytesOf(String.valueOf(error.getMessage())))
+                .setHeader(X_EXCEPTION_STACKTRACE, bytesOf(stackTrace.toString()));
+
+        String topic = headers.get(KafkaHeaders.RECEIVED_TOPIC, String.class);
+        Integer partition = headers.get(KafkaHeaders.RECEIVED_PARTITION_ID, Integer.class);
+        Long offset = headers.get(KafkaHeaders.OFFSET, Long.class);
+        if (topic != null) deadLetter.setHeader(X_ORIGINAL_TOPIC, bytesOf(topic));
+        if (partition != null) {
+            deadLetter.setHeader(X_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(partition).array());
+        }
+        if (offset != null) {
+            deadLetter.setHeader(X_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(offset).array());
+        }
+        if (headers.containsKey(KafkaHeaders.RECEIVED_MESSAGE_KEY)) {
+            deadLetter.setHeader(KafkaHeaders.MESSAGE_KEY, headers.get(KafkaHeaders.RECEIVED_MESSAGE_KEY));
+        }
+        return deadLetter.build();
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class PendingEvent<E> {
+
+        private final E event;
+        private final Acknowledgement acknowledgement;
+        private final Sinks.Empty<Void> result = Sinks.empty();
+
+        private PendingEvent(E event, Acknowledgement acknowledgement) {
+            this.event = event;
+            this.acknowledgement = acknowledgement;
+        }
+
+        private void done() {
+            result.tryEmitEmpty();
+        }
+
+        private void failed(Throwable error) {
+            result.tryEmitError(error);
+        }
+    }
+}
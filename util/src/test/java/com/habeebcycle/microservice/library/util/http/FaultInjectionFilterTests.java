@@ -0,0 +1,113 @@
+package com.habeebcycle.microservice.library.util.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FaultInjectionFilterTests {
+
+    private final WebTestClient client = WebTestClient
+            .bindToController(new TestController())
+            .webFilter(new FaultInjectionFilter(new String[] {"/product/{productId:[1-9]\\d*}"},
+                    new GlobalExceptionHandler(), new ObjectMapper().findAndRegisterModules()))
+            .configureClient()
+            .responseTimeout(Duration.ofSeconds(10))
+            .build();
+
+    @Test
+    void delayTest() {
+        long start = System.nanoTime();
+        getAndVerify("/product/1?delay=1", HttpStatus.OK).isEqualTo("product 1");
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) >= 0);
+    }
+
+    @Test
+    void faultPercentTest() {
+        getAndVerify("/product/1?faultPercent=100", HttpStatus.INTERNAL_SERVER_ERROR);
+        getAndVerify("/product/1?faultPercent=0", HttpStatus.OK).isEqualTo("product 1");
+    }
+
+    @Test
+    void faultHasTheUsualErrorBodyTest() {
+        client.get()
+                .uri("/product/1?faultPercent=100")
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR)
+                .expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.path").isEqualTo("/product/1")
+                .jsonPath("$.httpStatus").isEqualTo("INTERNAL_SERVER_ERROR")
+                .jsonPath("$.message").isEqualTo("Something went wrong...");
+    }
+
+    @Test
+    void invalidParametersAreLeftToTheControllerTest() {
+        long start = System.nanoTime();
+
+        // Neither delayed nor failed, the controller rejects them or answers right away
+        getAndVerify("/product/1?delay=no-integer&faultPercent=100", HttpStatus.BAD_REQUEST);
+        getAndVerify("/product/-1?delay=3&faultPercent=100", HttpStatus.OK).isEqualTo("product -1");
+        getAndVerify("/product/no-integer?delay=3", HttpStatus.BAD_REQUEST);
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) < 0);
+    }
+
+    @Test
+    void otherPathsAreNotAffectedTest() {
+        getAndVerify("/other?delay=3&faultPercent=100", HttpStatus.OK).isEqualTo("other");
+    }
+
+    @Test
+    void disabledByDefaultTest() {
+        ReactiveWebApplicationContextRunner runner = new ReactiveWebApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class))
+                .withUserConfiguration(FaultInjectionFilter.class, GlobalExceptionHandler.class)
+                .withPropertyValues("app.fault-injection.paths=/product/{productId}");
+
+        runner.run(context -> assertThat(context).doesNotHaveBean(FaultInjectionFilter.class));
+        runner.withPropertyValues("app.fault-injection.enabled=false")
+                .run(context -> assertThat(context).doesNotHaveBean(FaultInjectionFilter.class));
+        runner.withPropertyValues("app.fault-injection.enabled=true")
+                .run(context -> assertThat(context).hasSingleBean(FaultInjectionFilter.class));
+    }
+
+    private WebTestClient.BodySpec<String, ?> getAndVerify(String uri, HttpStatus expectedStatus) {
+        return client.get()
+                .uri(uri)
+                .exchange()
+                .expectStatus().isEqualTo(expectedStatus)
+                .expectBody(String.class);
+    }
+
+    @RestController
+    static class TestController {
+
+        @GetMapping("/product/{productId}")
+        Mono<String> getProduct(@PathVariable int productId,
+                                @RequestParam(value = "delay", defaultValue = "0") int delay,
+                                @RequestParam(value = "faultPercent", defaultValue = "0") int faultPercent) {
+            return Mono.just("product " + productId);
+        }
+
+        @GetMapping("/other")
+        Mono<String> getOther() {
+            return Mono.just("other");
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.habeebcycle.microservice.library.util.reactive;
+
+import com.habeebcycle.microservice.library.util.exceptions.InvalidInputException;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderedEventProcessorTests {
+
+    private final Channel channel = Mockito.mock(Channel.class);
+    private final StreamBridge streamBridge = Mockito.mock(StreamBridge.class);
+
+    // The writes of each event, the events starting with "batched" are batched
+    private final Map<String, List<Mono<Void>>> writes = new ConcurrentHashMap<>();
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+
+    private final TestProcessor processor = new TestProcessor();
+
+    @AfterEach
+    void tearDown() {
+        processor.shutdown();
+    }
+
+    @Test
+    void transientFailureIsRetriedTest() throws IOException {
+        answer("batched 1", Mono.error(new IllegalStateException("Connection lost")), Mono.empty());
+
+        sendToRabbit(1, "batched 1");
+
+        Mockito.verify(channel, Mockito.timeout(5000)).basicAck(1, false);
+        Mockito.verify(channel, Mockito.never()).basicNack(Mockito.anyLong(), Mockito.anyBoolean(), Mockito.anyBoolean());
+        assertEquals(List.of("batched 1", "batched 1"), calls);
+    }
+
+    @Test
+    void exhaustedRetriesAreRejectedTest() throws IOException {
+        Mono<Void> failure = Mono.error(new IllegalStateException("Connection lost"));
+        answer("delete 1", failure, failure, failure);
+
+        sendToRabbit(1, "delete 1");
+
+        Mockito.verify(channel, Mockito.timeout(5000)).basicNack(1, false, false);
+        assertEquals(List.of("delete 1", "delete 1", "delete 1"), calls);
+    }
+
+    @Test
+    void invalidEventIsRejectedWithoutRetriesTest() throws IOException {
+        answer("delete 1", Mono.error(new InvalidInputException("Invalid productId: -1")), Mono.empty());
+
+        sendToRabbit(1, "delete 1");
+
+        Mockito.verify(channel, Mockito.timeout(5000)).basicNack(1, false, false);
+        Mockito.verify(channel, Mockito.never()).basicAck(Mockito.anyLong(), Mockito.anyBoolean());
+        assertEquals(List.of("delete 1"), calls);
+    }
+
+    @Test
+    void kafkaOffsetsAreCommittedInOrderTest() {
+        Sinks.Empty<Void> firstWritten = Sinks.empty();
+        answer("batched 1", firstWritten.asMono());
+        answer("batched 2", Mono.empty());
+        Acknowledgment first = Mockito.mock(Acknowledgment.class);
+        Acknowledgment second = Mockito.mock(Acknowledgment.class);
+
+        // The consumer thread is not held back by the first write
+        sendToKafka(first, 1, "batched 1");
+        sendToKafka(second, 2, "batched 2");
+        assertEquals(List.of("batched 1", "batched 2"), calls);
+        Mockito.verify(second, Mockito.after(100).never()).acknowledge();
+
+        firstWritten.tryEmitEmpty();
+
+        InOrder committed = Mockito.inOrder(first, second);
+        committed.verify(first, Mockito.timeout(5000)).acknowledge();
+        committed.verify(second, Mockito.timeout(5000)).acknowledge();
+        Mockito.verifyNoInteractions(streamBridge);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void failedKafkaEventIsDeadLetteredTest() {
+        Mockito.when(streamBridge.send(Mockito.anyString(), Mockito.any())).thenReturn(true);
+        answer("batched 1", Mono.error(new InvalidInputException("Invalid productId: -1")));
+        Acknowledgment acknowledgment = Mockito.mock(Acknowledgment.class);
+
+        sendToKafka(acknowledgment, 7, "batched 1");
+
+        // Kafka cannot reject a single record, it is published to the dead-letter topic before the offset is committed
+        InOrder rejected = Mockito.inOrder(streamBridge, acknowledgment);
+        ArgumentCaptor<Object> deadLetter = ArgumentCaptor.forClass(Object.class);
+        rejected.verify(streamBridge, Mockito.timeout(5000))
+                .send(Mockito.eq("error.events.eventsGroup"), deadLetter.capture());
+        rejected.verify(acknowledgment, Mockito.timeout(5000)).acknowledge();
+
+        Message<String> message = (Message<String>) deadLetter.getValue();
+        assertEquals("batched 1", message.getPayload());
+        assertEquals("events", new String(message.getHeaders().get("x-original-topic", byte[].class)));
+        assertEquals(3, ByteBuffer.wrap(message.getHeaders().get("x-original-partition", byte[].class)).getInt());
+        assertEquals(7, ByteBuffer.wrap(message.getHeaders().get("x-original-offset", byte[].class)).getLong());
+        assertEquals(InvalidInputException.class.getName(),
+                new String(message.getHeaders().get("x-exception-fqcn", byte[].class)));
+        assertEquals("Invalid productId: -1",
+                new String(message.getHeaders().get("x-exception-message", byte[].class)));
+        assertNotNull(message.getHeaders().get("x-exception-stacktrace"));
+    }
+
+    @Test
+    void unacknowledgedEventWaitsForItsResultTest() {
+        answer("delete 1", Mono.error(new IllegalStateException("Connection lost")), Mono.empty());
+
+        // Without manual acknowledgement the binder retries, so the event is not retried here
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> processor.receive(MessageBuilder.withPayload("delete 1").build()));
+        assertEquals("Connection lost", error.getMessage());
+        assertEquals(List.of("delete 1"), calls);
+    }
+
+    @Test
+    void unacknowledgedBatchedEventIsWrittenAloneTest() {
+        answer("batched 1", Mono.empty());
+
+        // The consumer thread waits for the event, so no other event could join its batch
+        processor.receive(MessageBuilder.withPayload("batched 1").build());
+        assertEquals(List.of("unbatched batched 1"), calls);
+    }
+
+    // Each attempt to write the event returns the next of the results
+    @SafeVarargs
+    private void answer(String event, Mono<Void>... results) {
+        writes.put(event, new CopyOnWriteArrayList<>(results));
+    }
+
+    private void sendToRabbit(long deliveryTag, String event) {
+        processor.receive(MessageBuilder.withPayload(event)
+                .setHeader(AmqpHeaders.CHANNEL, channel)
+                .setHeader(AmqpHeaders.DELIVERY_TAG, deliveryTag)
+                .build());
+    }
+
+    private void sendToKafka(Acknowledgment acknowledgment, long offset, String event) {
+        processor.receive(MessageBuilder.withPayload(event)
+                .setHeader(KafkaHeaders.ACKNOWLEDGMENT, acknowledgment)
+                .setHeader(KafkaHeaders.RECEIVED_TOPIC, "events")
+                .setHeader(KafkaHeaders.RECEIVED_PARTITION_ID, 3)
+                .setHeader(KafkaHeaders.OFFSET, offset)
+                .build());
+    }
+
+    private class TestProcessor extends OrderedEventProcessor<String> {
+
+        private TestProcessor() {
+            super(3, Duration.ofMillis(10), Duration.ofMillis(10), 10, streamBridge, "error.events.eventsGroup");
+        }
+
+        @Override
+        protected boolean isBatched(String event) {
+            return event.startsWith("batched");
+        }
+
+        @Override
+        protected Mono<?> write(String event) {
+            return Mono.defer(() -> {
+                calls.add(event);
+                return writes.get(event).remove(0);
+            });
+        }
+
+        @Override
+        protected Mono<?> writeUnbatched(String event) {
+            return Mono.defer(() -> {
+                calls.add("unbatched " + event);
+                return writes.get(event).remove(0);
+            });
+        }
+    }
+}